@@ -0,0 +1,133 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Executors shared by the adapters to move expensive work (diff, filtering,
+ * loading) out of the main thread and to post the results back.
+ */
+final class AdapterExecutors {
+
+    private static final int KEEP_ALIVE_SECONDS = 30;
+    private static volatile Executor background;
+    private static volatile Executor filter;
+    private static volatile Executor parallel;
+    private static volatile Handler mainHandler;
+
+    private AdapterExecutors() {
+    }
+
+    /**
+     * A single background thread, created on demand and released when idle.
+     * Tasks are executed in submission order.
+     */
+    @NonNull
+    static Executor background() {
+        if (background == null) {
+            synchronized (AdapterExecutors.class) {
+                if (background == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+                    executor.allowCoreThreadTimeOut(true);
+                    background = executor;
+                }
+            }
+        }
+        return background;
+    }
+
+    /**
+     * A single thread for the filterings repeated after a change, so they don't wait behind
+     * diffs and loads, and they don't take a thread of the pool splitting their scans.
+     * Created on demand and released when idle.
+     */
+    @NonNull
+    static Executor filter() {
+        if (filter == null) {
+            synchronized (AdapterExecutors.class) {
+                if (filter == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+                    executor.allowCoreThreadTimeOut(true);
+                    filter = executor;
+                }
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * A pool with one thread per CPU, created on demand and released when idle.
+     * Used to split long scans in parallel chunks.
+     */
+    @NonNull
+    static Executor parallel() {
+        if (parallel == null) {
+            synchronized (AdapterExecutors.class) {
+                if (parallel == null) {
+                    final int threads = parallelism();
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS,
+                            TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new BackgroundThreadFactory());
+                    executor.allowCoreThreadTimeOut(true);
+                    parallel = executor;
+                }
+            }
+        }
+        return parallel;
+    }
+
+    static int parallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @NonNull
+    static Handler mainThread() {
+        if (mainHandler == null) {
+            synchronized (AdapterExecutors.class) {
+                if (mainHandler == null) {
+                    mainHandler = new Handler(Looper.getMainLooper());
+                }
+            }
+        }
+        return mainHandler;
+    }
+
+    private static class BackgroundThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread t = new Thread(r, "SmartRecyclerView-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Snapshot of the items of an adapter and of the scroll position, saved in a file to show
+ * the last content immediately at the next start
+ * @param <T> The type of the items
+ */
+public final class AdapterSnapshot<T> {
+
+    /**
+     * Receives the result of
+     * {@link RecyclerArrayAdapter#restoreSnapshotAsync(File, ItemSerializer, Callback)}
+     * @param <T> The type of the items
+     */
+    public interface Callback<T> {
+        /**
+         * @param snapshot The restored snapshot or null if not restored because the adapter is
+         *                 not empty or the file is missing or not valid
+         */
+        void onSnapshotRestored(@Nullable AdapterSnapshot<T> snapshot);
+    }
+
+    private static final int MAGIC = 0x53525653;
+    private static final int FORMAT_VERSION = 1;
+
+    private final List<T> items;
+    private final int anchorPosition;
+    private final int anchorOffset;
+
+    private AdapterSnapshot(List<T> items, int anchorPosition, int anchorOffset) {
+        this.items = items;
+        this.anchorPosition = anchorPosition;
+        this.anchorOffset = anchorOffset;
+    }
+
+    /**
+     * @return The items of the snapshot
+     */
+    @NonNull
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return The position of the first visible item, to restore the scroll position for
+     * example with LinearLayoutManager.scrollToPositionWithOffset
+     */
+    public int getAnchorPosition() {
+        return anchorPosition;
+    }
+
+    /**
+     * @return The offset of the first visible item from the start of the list
+     */
+    public int getAnchorOffset() {
+        return anchorOffset;
+    }
+
+    /**
+     * Write a snapshot to a temporary file and then rename it, so the previous snapshot is
+     * replaced only by a complete one
+     */
+    static <T> void write(@NonNull File file, @NonNull List<T> items, @NonNull ItemSerializer<T> serializer,
+                          int anchorPosition, int anchorOffset) throws IOException {
+        final File tmp = new File(file.getPath() + ".tmp");
+        boolean renamed = false;
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(anchorPosition);
+                out.writeInt(anchorOffset);
+                out.writeInt(items.size());
+                for (T item : items) {
+                    serializer.write(item, out);
+                }
+            } finally {
+                out.close();
+            }
+            renamed = tmp.renameTo(file);
+            if (!renamed)
+                throw new IOException("Cannot rename " + tmp + " to " + file);
+        } finally {
+            // A partial snapshot left by a failed write is never read
+            if (!renamed)
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+        }
+    }
+
+    /**
+     * Read a snapshot from a memory mapped file
+     * @return The snapshot or null if the file doesn't exist or it's not valid
+     * @throws RuntimeException If thrown by the serializer
+     */
+    @Nullable
+    static <T> AdapterSnapshot<T> read(@NonNull File file, @NonNull ItemSerializer<T> serializer) {
+        if (!file.isFile())
+            return null;
+        try {
+            final DataInputStream in = new DataInputStream(new ByteBufferInputStream(map(file)));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                return null;
+            final int anchorPosition = in.readInt();
+            final int anchorOffset = in.readInt();
+            final int count = in.readInt();
+            // Every item takes at least one byte, a larger count is corrupted
+            if (count < 0 || count > in.available())
+                return null;
+            final List<T> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(serializer.read(in));
+            }
+            return new AdapterSnapshot<>(items, anchorPosition, anchorOffset);
+        } catch (IOException e) {
+            // A truncated or corrupted snapshot is ignored, the real data arrives anyway.
+            // Reads past the end throw EOFException, errors of the serializer are not hidden.
+            return null;
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            final int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -21,11 +21,17 @@ import android.annotation.SuppressLint;
 import android.graphics.Color;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewParent;
 import android.widget.Checkable;
 
 import com.balda.smartrecyclerview.touchhelper.ItemTouchHelperViewHolder;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import androidx.annotation.IdRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.RecyclerView;
 
 /**
@@ -35,7 +41,50 @@ import androidx.recyclerview.widget.RecyclerView;
 @SuppressWarnings("unused")
 public abstract class BaseViewHolder extends RecyclerView.ViewHolder implements ItemTouchHelperViewHolder {
 
+    /**
+     * Payload used to notify a change of the checked state only. Items changed with
+     * this payload just update the checked state without calling onBind.
+     */
+    public static final Object PAYLOAD_CHECKED_STATE = new Object();
+
+    /**
+     * Payload used when only the match spans of the item are changed, see
+     * {@link #getMatchSpans(int)}
+     */
+    public static final Object PAYLOAD_MATCH_SPANS = new Object();
+
+    /**
+     * Shared by all the drag handles, the holder is found from the touched view
+     */
+    private static final View.OnTouchListener DRAG_HANDLE_LISTENER = new View.OnTouchListener() {
+        @SuppressLint("ClickableViewAccessibility")
+        @Override
+        public boolean onTouch(View v, MotionEvent event) {
+            if (event.getAction() == MotionEvent.ACTION_DOWN) {
+                ViewParent parent = v.getParent();
+                while (parent != null && !(parent instanceof RecyclerView))
+                    parent = parent.getParent();
+                if (parent == null)
+                    return false;
+                RecyclerView.ViewHolder holder = ((RecyclerView) parent).findContainingViewHolder(v);
+                if (holder instanceof BaseViewHolder) {
+                    BaseViewHolder h = (BaseViewHolder) holder;
+                    if (h.getBoundAdapter() != null)
+                        h.getBoundAdapter().onStartDrag(h);
+                }
+            }
+            return false;
+        }
+    };
+
+    /**
+     * The adapter that created this holder
+     */
     protected final RecyclerArrayAdapter adapter;
+    /**
+     * The adapter that bound this holder last, null until bound
+     */
+    private RecyclerArrayAdapter<?, ?> boundAdapter;
 
     public BaseViewHolder(RecyclerArrayAdapter adapter, View itemView) {
         super(itemView);
@@ -45,25 +94,26 @@ public abstract class BaseViewHolder extends RecyclerView.ViewHolder implements
     public BaseViewHolder(RecyclerArrayAdapter recViewAdapter, View itemView, @IdRes int dragViewId) {
         super(itemView);
         this.adapter = recViewAdapter;
-        View v = itemView.findViewById(dragViewId);
-        v.setOnTouchListener(new View.OnTouchListener() {
-            @SuppressLint("ClickableViewAccessibility")
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (event.getAction() == MotionEvent.ACTION_DOWN) {
-                    if (adapter != null)
-                        adapter.onStartDrag(BaseViewHolder.this);
-                }
-                return false;
-            }
-        });
+        itemView.findViewById(dragViewId).setOnTouchListener(DRAG_HANDLE_LISTENER);
+    }
+
+    void setBoundAdapter(RecyclerArrayAdapter<?, ?> adapter) {
+        boundAdapter = adapter;
+    }
+
+    /**
+     * @return The adapter that bound this holder last, it differs from {@link #adapter} when
+     * the holders come from a pool shared by several adapters
+     */
+    protected RecyclerArrayAdapter<?, ?> getBoundAdapter() {
+        return boundAdapter != null ? boundAdapter : adapter;
     }
 
     void onClickListener(View view) {
         if (isChoiceModeActive()) {
             int position = getAdapterPosition();
-            if (position != RecyclerView.NO_POSITION && adapter.getCheckableList() != null) {
-                adapter.getCheckableList().toggleItemChecked(position, false);
+            if (position != RecyclerView.NO_POSITION && getBoundAdapter().getCheckableList() != null) {
+                getBoundAdapter().getCheckableList().toggleItemChecked(position, false);
                 updateCheckedState(position);
             }
         }
@@ -73,12 +123,12 @@ public abstract class BaseViewHolder extends RecyclerView.ViewHolder implements
         if (!isChoiceModeModal())
             return;
 
-        if (adapter.getCheckableList() == null || isChoiceModeActive()) {
+        if (getBoundAdapter().getCheckableList() == null || isChoiceModeActive()) {
             return;
         }
         int position = getAdapterPosition();
         if (position != RecyclerView.NO_POSITION) {
-            adapter.getCheckableList().setItemChecked(position, true, false);
+            getBoundAdapter().getCheckableList().setItemChecked(position, true, false);
             updateCheckedState(position);
         }
     }
@@ -100,11 +150,55 @@ public abstract class BaseViewHolder extends RecyclerView.ViewHolder implements
         onBind(position);
     }
 
+    void bindViewHolder(int position, @NonNull List<Object> payloads) {
+        updateCheckedState(position);
+        if (payloads.isEmpty()) {
+            onBind(position);
+            return;
+        }
+        int checkedStatePayloads = 0;
+        for (int i = 0; i < payloads.size(); i++) {
+            if (payloads.get(i) == PAYLOAD_CHECKED_STATE)
+                checkedStatePayloads++;
+        }
+        if (checkedStatePayloads == 0) {
+            onBind(position, payloads);
+        } else if (checkedStatePayloads < payloads.size()) {
+            final List<Object> dataPayloads = new ArrayList<>(payloads.size() - checkedStatePayloads);
+            for (int i = 0; i < payloads.size(); i++) {
+                if (payloads.get(i) != PAYLOAD_CHECKED_STATE)
+                    dataPayloads.add(payloads.get(i));
+            }
+            onBind(position, dataPayloads);
+        }
+    }
+
     protected abstract void onBind(int position);
 
+    /**
+     * Partial bind, called when the item is changed and a payload is available.
+     * By default it performs a full bind, override it to update only the views
+     * affected by the payloads.
+     * @param position The adapter position
+     * @param payloads The payloads, see {@link RecyclerArrayAdapter#getChangePayload(Object, Object)}
+     */
+    protected void onBind(int position, @NonNull List<Object> payloads) {
+        onBind(position);
+    }
+
+    /**
+     * Return the ranges of the filter text matched by the current filter, to highlight them
+     * @param position The adapter position
+     * @return Pairs of start and end offsets or null if not available
+     */
+    @Nullable
+    protected int[] getMatchSpans(int position) {
+        return getBoundAdapter().getMatchSpans(position);
+    }
+
     protected void updateCheckedState(int position) {
-        if (adapter.getCheckableList() != null) {
-            final boolean isChecked = adapter.getCheckableList().isItemChecked(position);
+        if (getBoundAdapter().getCheckableList() != null) {
+            final boolean isChecked = getBoundAdapter().getCheckableList().isItemChecked(position);
             if (itemView instanceof Checkable) {
                 ((Checkable) itemView).setChecked(isChecked);
             } else {
@@ -114,12 +208,12 @@ public abstract class BaseViewHolder extends RecyclerView.ViewHolder implements
     }
 
     protected boolean isChoiceModeActive() {
-        return adapter.getCheckableList() != null && adapter.getCheckableList()
-                .getChoiceMode() != CheckableList.NONE && (adapter.getCheckableList()
-                .getChoiceMode() != CheckableList.MULTI_MODAL || adapter.getCheckableList().getCheckedItemCount() > 0);
+        return getBoundAdapter().getCheckableList() != null && getBoundAdapter().getCheckableList()
+                .getChoiceMode() != CheckableList.NONE && (getBoundAdapter().getCheckableList()
+                .getChoiceMode() != CheckableList.MULTI_MODAL || getBoundAdapter().getCheckableList().getCheckedItemCount() > 0);
     }
 
     protected boolean isChoiceModeModal() {
-        return adapter.getCheckableList() != null && adapter.getCheckableList().getChoiceMode() == CheckableList.MULTI_MODAL;
+        return getBoundAdapter().getCheckableList() != null && getBoundAdapter().getCheckableList().getChoiceMode() == CheckableList.MULTI_MODAL;
     }
 }
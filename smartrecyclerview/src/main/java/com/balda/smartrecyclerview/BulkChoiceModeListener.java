@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import android.view.ActionMode;
+
+/**
+ * Multi choice listener notified once for each bulk selection operation, see
+ * {@link CheckableList#selectAll()}, {@link CheckableList#selectRange(int, int, boolean)},
+ * {@link CheckableList#invertSelection()} and
+ * {@link CheckableList#selectWhere(CheckableList.PositionPredicate)}.
+ * Listeners not implementing this interface are not notified item by item for bulk
+ * operations, the action mode is just invalidated.
+ */
+public interface BulkChoiceModeListener extends MultiChoiceModeListener {
+    /**
+     * Called when a bulk operation changed the checked state of one or more items.
+     *
+     * @param mode      The {@link ActionMode} providing the selection mode
+     * @param checked   Number of items that are now checked and were not checked before
+     * @param unchecked Number of items that are now unchecked and were checked before
+     */
+    void onItemsCheckedStateChanged(ActionMode mode, int checked, int unchecked);
+}
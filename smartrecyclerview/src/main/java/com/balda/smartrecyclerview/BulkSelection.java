@@ -0,0 +1,176 @@
+/*
+ * Copyright 2018 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.BitSet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Changes the checked state of a range of positions in one pass, keeping the checked ids in
+ * sync. The number of checked and unchecked items and the range of changed positions are
+ * kept until the next call, so the caller can notify the adapter and the listener once.
+ */
+final class BulkSelection {
+
+    static final int CHECK = 0;
+    static final int UNCHECK = 1;
+    static final int INVERT = 2;
+    static final int PREDICATE = 3;
+
+    /**
+     * Ids of the items of the adapter
+     */
+    interface ItemIds {
+        /**
+         * @return False if the id of the item is not known yet, as for a placeholder
+         */
+        boolean isItemIdKnown(int position);
+
+        long getItemId(int position);
+    }
+
+    private int checked;
+    private int unchecked;
+    private int firstChanged;
+    private int lastChanged;
+
+    /**
+     * Change the checked state of the positions in [start, end). With ids, the positions
+     * whose id is not known are never checked, and the ones to uncheck are removed from
+     * the ids by their last known position.
+     * @param checkedIds The checked ids mapped to their positions, null without stable ids
+     * @param itemIds The ids of the items, used only with checkedIds
+     * @param operation {@link #CHECK}, {@link #UNCHECK}, {@link #INVERT} or {@link #PREDICATE}
+     * @param predicate Positions to check with {@link #PREDICATE}, checked ones are kept
+     * @return True if at least a position changed
+     */
+    boolean apply(@NonNull BitSet checkStates, @Nullable LongIntMap checkedIds, @Nullable ItemIds itemIds,
+                  int start, int end, int operation, @Nullable CheckableList.PositionPredicate predicate) {
+        checked = 0;
+        unchecked = 0;
+        firstChanged = -1;
+        lastChanged = -1;
+        if (start >= end)
+            return false;
+        if (checkedIds == null && operation != PREDICATE) {
+            // Without ids the whole range can be updated at word level
+            final int alreadyChecked = checkStates.get(start, end).cardinality();
+            if (operation == CHECK) {
+                checkStates.set(start, end);
+                checked = end - start - alreadyChecked;
+            } else if (operation == UNCHECK) {
+                checkStates.clear(start, end);
+                unchecked = alreadyChecked;
+            } else {
+                checkStates.flip(start, end);
+                checked = end - start - alreadyChecked;
+                unchecked = alreadyChecked;
+            }
+            if (checked > 0 || unchecked > 0) {
+                firstChanged = start;
+                lastChanged = end - 1;
+            }
+            return firstChanged >= 0;
+        }
+        BitSet uncheckedPlaceholders = null;
+        for (int position = start; position < end; position++) {
+            final boolean oldValue = checkStates.get(position);
+            final boolean idKnown = checkedIds == null || itemIds.isItemIdKnown(position);
+            if (!oldValue && !idKnown)
+                continue;
+            final boolean value;
+            switch (operation) {
+                case CHECK:
+                    value = true;
+                    break;
+                case UNCHECK:
+                    value = false;
+                    break;
+                case INVERT:
+                    value = !oldValue;
+                    break;
+                default:
+                    value = oldValue || predicate.apply(position);
+                    break;
+            }
+            if (value == oldValue)
+                continue;
+            checkStates.set(position, value);
+            if (!idKnown) {
+                if (uncheckedPlaceholders == null)
+                    uncheckedPlaceholders = new BitSet();
+                uncheckedPlaceholders.set(position);
+            } else if (checkedIds != null) {
+                final long id = itemIds.getItemId(position);
+                if (value)
+                    checkedIds.put(id, position);
+                else
+                    checkedIds.remove(id);
+            }
+            if (value)
+                checked++;
+            else
+                unchecked++;
+            if (firstChanged < 0)
+                firstChanged = position;
+            lastChanged = position;
+        }
+        if (uncheckedPlaceholders != null)
+            removeIds(checkedIds, uncheckedPlaceholders);
+        return firstChanged >= 0;
+    }
+
+    /**
+     * Remove the ids whose last known position is in the set
+     */
+    static void removeIds(@NonNull LongIntMap checkedIds, @NonNull BitSet positions) {
+        final long[] removed = new long[positions.cardinality()];
+        int removedCount = 0;
+        for (int slot = 0; slot < checkedIds.slotCount() && removedCount < removed.length; slot++) {
+            if (checkedIds.isSlotUsed(slot) && positions.get(checkedIds.valueAt(slot)))
+                removed[removedCount++] = checkedIds.keyAt(slot);
+        }
+        for (int i = 0; i < removedCount; i++) {
+            checkedIds.remove(removed[i]);
+        }
+    }
+
+    /**
+     * @return The number of positions checked by the last call
+     */
+    int getChecked() {
+        return checked;
+    }
+
+    /**
+     * @return The number of positions unchecked by the last call
+     */
+    int getUnchecked() {
+        return unchecked;
+    }
+
+    int getFirstChanged() {
+        return firstChanged;
+    }
+
+    int getLastChanged() {
+        return lastChanged;
+    }
+}
@@ -56,4 +56,36 @@ public interface CheckableList {
     void setItemChecked(int position, boolean value, boolean notifyChanged);
 
     void toggleItemChecked(int position, boolean notifyChanged);
+
+    /**
+     * Predicate used to select items by position
+     */
+    interface PositionPredicate {
+        boolean apply(int position);
+    }
+
+    /**
+     * Check all the items. Bulk operations are available only in multiple choice modes,
+     * they notify the adapter once and the listener once.
+     */
+    void selectAll();
+
+    /**
+     * Check or uncheck a range of items
+     * @param positionStart The first position
+     * @param itemCount The number of items
+     * @param value True to check, false to uncheck
+     */
+    void selectRange(int positionStart, int itemCount, boolean value);
+
+    /**
+     * Invert the checked state of all the items
+     */
+    void invertSelection();
+
+    /**
+     * Check all the items for which the predicate is true, the others are left unchanged
+     * @param predicate The predicate
+     */
+    void selectWhere(PositionPredicate predicate);
 }
\ No newline at end of file
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Updates the checked positions and the positions of the checked ids after an insert,
+ * remove or move of the adapter, without asking the adapter. The cost depends on the
+ * number of checked items only. The buffers are reused, so shifting doesn't allocate.
+ */
+final class CheckedPositionShifter {
+
+    static final int INSERT = 0;
+    static final int REMOVE = 1;
+    static final int MOVE = 2;
+
+    /**
+     * Temporary storage for the checked positions being shifted
+     */
+    private int[] positions = new int[0];
+    /**
+     * Ids removed by the last {@link #shiftIds(LongIntMap, int, int, int, int)} and their last positions
+     */
+    private long[] removedIds = new long[0];
+    private int[] removedPositions = new int[0];
+    private int removedIdCount;
+
+    /**
+     * Map a position according to a structural change of the adapter.
+     * @param type {@link #INSERT}, {@link #REMOVE} or {@link #MOVE}
+     * @param start The first position inserted or removed, or the position moved
+     * @param target The new position of the moved item
+     * @param count The number of items inserted or removed
+     * @return The new position or NO_POSITION if the item has been removed
+     */
+    static int shift(int position, int type, int start, int target, int count) {
+        switch (type) {
+            case INSERT:
+                return position >= start ? position + count : position;
+            case REMOVE:
+                if (position < start)
+                    return position;
+                return position < start + count ? RecyclerView.NO_POSITION : position - count;
+            default:
+                if (position == start)
+                    return target;
+                if (start < target && position > start && position <= target)
+                    return position - 1;
+                if (start > target && position >= target && position < start)
+                    return position + 1;
+                return position;
+        }
+    }
+
+    /**
+     * Shift the checked positions. The positions removed are unchecked.
+     * @return The number of checked positions removed, or -1 if no checked position is affected
+     */
+    int shiftPositions(@NonNull BitSet checkStates, int type, int start, int target, int count) {
+        final int first = type == MOVE ? Math.min(start, target) : start;
+        int n = 0;
+        for (int i = checkStates.nextSetBit(first); i >= 0; i = checkStates.nextSetBit(i + 1)) {
+            if (n == positions.length)
+                positions = Arrays.copyOf(positions, Math.max(16, n * 2));
+            positions[n++] = i;
+        }
+        if (n == 0)
+            return -1;
+        checkStates.clear(first, checkStates.length());
+        int removed = 0;
+        for (int i = 0; i < n; i++) {
+            final int position = shift(positions[i], type, start, target, count);
+            if (position != RecyclerView.NO_POSITION)
+                checkStates.set(position);
+            else
+                removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * Shift the last known positions of the checked ids. The ids whose position is removed
+     * are removed from the map, they can be read with {@link #getRemovedIdCount()},
+     * {@link #getRemovedId(int)} and {@link #getRemovedPosition(int)} until the next call.
+     */
+    void shiftIds(@NonNull LongIntMap checkedIdStates, int type, int start, int target, int count) {
+        removedIdCount = 0;
+        for (int slot = 0; slot < checkedIdStates.slotCount(); slot++) {
+            if (!checkedIdStates.isSlotUsed(slot))
+                continue;
+            final int lastPos = checkedIdStates.valueAt(slot);
+            final int position = shift(lastPos, type, start, target, count);
+            if (position != RecyclerView.NO_POSITION) {
+                checkedIdStates.setValueAt(slot, position);
+            } else {
+                if (removedIdCount == removedIds.length) {
+                    removedIds = Arrays.copyOf(removedIds, Math.max(8, removedIdCount * 2));
+                    removedPositions = Arrays.copyOf(removedPositions, removedIds.length);
+                }
+                removedIds[removedIdCount] = checkedIdStates.keyAt(slot);
+                removedPositions[removedIdCount++] = lastPos;
+            }
+        }
+        // Removing moves the entries of the map, so it's done after the scan
+        for (int i = 0; i < removedIdCount; i++) {
+            checkedIdStates.remove(removedIds[i]);
+        }
+    }
+
+    int getRemovedIdCount() {
+        return removedIdCount;
+    }
+
+    long getRemovedId(int index) {
+        return removedIds[index];
+    }
+
+    int getRemovedPosition(int index) {
+        return removedPositions[index];
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.BatchingListUpdateCallback;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Diff calculation used by the adapter refresh. Before running the Myers algorithm
+ * of {@link DiffUtil} it strips the common prefix and suffix of the two lists, so
+ * that only the changed window in the middle is diffed. Plain appends, insertions
+ * at the head and truncations never reach {@link DiffUtil}.
+ */
+final class DiffPipeline {
+
+    private DiffPipeline() {
+    }
+
+    /**
+     * Calculate the difference between the two lists described by the callback. It can be
+     * called from a background thread.
+     * @param callback The callback to compare the items
+     * @param detectMoves True to detect moved items in the changed window
+     * @return The result to dispatch
+     */
+    @NonNull
+    static Result calculate(@NonNull DiffUtil.Callback callback, boolean detectMoves) {
+        final int oldSize = callback.getOldListSize();
+        final int newSize = callback.getNewListSize();
+        final int min = Math.min(oldSize, newSize);
+        final Result result = new Result(callback);
+
+        int prefix = 0;
+        while (prefix < min && callback.areItemsTheSame(prefix, prefix)) {
+            if (!callback.areContentsTheSame(prefix, prefix))
+                result.addChange(prefix, prefix);
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < min - prefix && callback.areItemsTheSame(oldSize - 1 - suffix, newSize - 1 - suffix)) {
+            if (!callback.areContentsTheSame(oldSize - 1 - suffix, newSize - 1 - suffix))
+                result.addChange(oldSize - 1 - suffix, newSize - 1 - suffix);
+            suffix++;
+        }
+
+        result.prefix = prefix;
+        result.oldWindow = oldSize - prefix - suffix;
+        result.newWindow = newSize - prefix - suffix;
+        if (result.oldWindow > 0 && result.newWindow > 0) {
+            result.window = DiffUtil.calculateDiff(new WindowCallback(callback, prefix, result.oldWindow,
+                    result.newWindow), detectMoves);
+        }
+        return result;
+    }
+
+    static final class Result {
+        private final DiffUtil.Callback callback;
+        private int prefix;
+        private int oldWindow;
+        private int newWindow;
+        @Nullable
+        private DiffUtil.DiffResult window;
+        /**
+         * Pairs of (old position, new position) of the items in the prefix or suffix with
+         * changed contents.
+         */
+        private int[] changes = new int[0];
+        private int changeCount;
+
+        Result(DiffUtil.Callback callback) {
+            this.callback = callback;
+        }
+
+        private void addChange(int oldPosition, int newPosition) {
+            if (changeCount * 2 == changes.length)
+                changes = Arrays.copyOf(changes, Math.max(8, changes.length * 2));
+            changes[changeCount * 2] = oldPosition;
+            changes[changeCount * 2 + 1] = newPosition;
+            changeCount++;
+        }
+
+        /**
+         * Dispatch the updates, it must be called from the main thread
+         * @param target The callback receiving the updates
+         */
+        void dispatchUpdatesTo(@NonNull ListUpdateCallback target) {
+            final BatchingListUpdateCallback batching = new BatchingListUpdateCallback(target);
+            if (window != null) {
+                window.dispatchUpdatesTo(new OffsetCallback(batching, prefix));
+            } else if (oldWindow > 0) {
+                batching.onRemoved(prefix, oldWindow);
+            } else if (newWindow > 0) {
+                batching.onInserted(prefix, newWindow);
+            }
+            // Prefix and suffix positions are already the final ones at this point
+            for (int i = 0; i < changeCount; i++) {
+                final int oldPosition = changes[i * 2];
+                final int newPosition = changes[i * 2 + 1];
+                batching.onChanged(newPosition, 1, callback.getChangePayload(oldPosition, newPosition));
+            }
+            batching.dispatchLastEvent();
+        }
+    }
+
+    /**
+     * Exposes to {@link DiffUtil} only the window of the lists between prefix and suffix
+     */
+    private static final class WindowCallback extends DiffUtil.Callback {
+        private final DiffUtil.Callback wrapped;
+        private final int offset;
+        private final int oldSize;
+        private final int newSize;
+
+        WindowCallback(DiffUtil.Callback wrapped, int offset, int oldSize, int newSize) {
+            this.wrapped = wrapped;
+            this.offset = offset;
+            this.oldSize = oldSize;
+            this.newSize = newSize;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldSize;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newSize;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return wrapped.areItemsTheSame(oldItemPosition + offset, newItemPosition + offset);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return wrapped.areContentsTheSame(oldItemPosition + offset, newItemPosition + offset);
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return wrapped.getChangePayload(oldItemPosition + offset, newItemPosition + offset);
+        }
+    }
+
+    private static final class OffsetCallback implements ListUpdateCallback {
+        private final ListUpdateCallback wrapped;
+        private final int offset;
+
+        OffsetCallback(ListUpdateCallback wrapped, int offset) {
+            this.wrapped = wrapped;
+            this.offset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            wrapped.onInserted(position + offset, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            wrapped.onRemoved(position + offset, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            wrapped.onMoved(fromPosition + offset, toPosition + offset);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            wrapped.onChanged(position + offset, count, payload);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Measures of a filter query published by {@link RecyclerArrayAdapter}
+ */
+public final class FilterMetrics {
+
+    @Nullable
+    private final String constraint;
+    private final long scanTimeNanos;
+    private final long publishTimeNanos;
+    private final int matchCount;
+    private final int droppedQueries;
+
+    FilterMetrics(@Nullable String constraint, long scanTimeNanos, long publishTimeNanos, int matchCount,
+                  int droppedQueries) {
+        this.constraint = constraint;
+        this.scanTimeNanos = scanTimeNanos;
+        this.publishTimeNanos = publishTimeNanos;
+        this.matchCount = matchCount;
+        this.droppedQueries = droppedQueries;
+    }
+
+    /**
+     * @return The constraint of the query, null or empty if the filter was cleared
+     */
+    @Nullable
+    public String getConstraint() {
+        return constraint;
+    }
+
+    /**
+     * @return The time spent matching the items and calculating the updates, on the filter thread
+     */
+    public long getScanTimeNanos() {
+        return scanTimeNanos;
+    }
+
+    /**
+     * @return The time spent applying the results and notifying the adapter, on the main thread
+     */
+    public long getPublishTimeNanos() {
+        return publishTimeNanos;
+    }
+
+    /**
+     * @return The number of items shown
+     */
+    public int getMatchCount() {
+        return matchCount;
+    }
+
+    /**
+     * @return The number of queries superseded by a newer one before being published,
+     * since the previous published query
+     */
+    public int getDroppedQueries() {
+        return droppedQueries;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "FilterMetrics{constraint=" + constraint + ", scanTimeNanos=" + scanTimeNanos +
+                ", publishTimeNanos=" + publishTimeNanos + ", matchCount=" + matchCount +
+                ", droppedQueries=" + droppedQueries + "}";
+    }
+
+    /**
+     * Listener notified on the main thread every time a filter query is published
+     */
+    public interface Listener {
+        void onFilterPublished(@NonNull FilterMetrics metrics);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Fuzzy matcher: an item matches if all the characters of the constraint appear in its
+ * text in the same order, not necessarily consecutive. Consecutive characters and
+ * characters at the start of a word increase the score, gaps decrease it.
+ * @param <T> The type of the items
+ */
+public class FuzzyMatcher<T> implements Matcher<T> {
+
+    private static final int MATCH_SCORE = 16;
+    private static final int CONSECUTIVE_BONUS = 24;
+    private static final int WORD_START_BONUS = 32;
+    private static final int MAX_GAP_PENALTY = 12;
+
+    @Override
+    public int match(@NonNull T item, @NonNull String text, @NonNull String constraint, @Nullable MatchSpans spans) {
+        int score = 0;
+        int previous = -1;
+        int from = 0;
+        for (int i = 0; i < constraint.length(); i++) {
+            final char c = constraint.charAt(i);
+            int found = text.indexOf(c, from);
+            if (found < 0)
+                return NO_MATCH;
+            // Prefer an occurrence at the start of a word, unless this one is consecutive or
+            // the rest of the constraint can't be matched after it
+            if (found != previous + 1 && !isWordStart(text, found)) {
+                final int wordStart = findWordStart(text, c, found + 1);
+                if (wordStart >= 0 && isSubsequence(constraint, i + 1, text, wordStart + 1))
+                    found = wordStart;
+            }
+            score += MATCH_SCORE;
+            if (found == previous + 1 && previous >= 0)
+                score += CONSECUTIVE_BONUS;
+            if (isWordStart(text, found))
+                score += WORD_START_BONUS;
+            score -= Math.min(found - from, MAX_GAP_PENALTY);
+            if (spans != null)
+                spans.add(found, found + 1);
+            previous = found;
+            from = found + 1;
+        }
+        // Shorter texts are better matches
+        return score - (text.length() - constraint.length()) / 8;
+    }
+
+    private static boolean isWordStart(String text, int index) {
+        return index == 0 || text.charAt(index - 1) == ' ';
+    }
+
+    /**
+     * Return true if the characters of the constraint from start appear in order in the text from
+     * textStart
+     */
+    private static boolean isSubsequence(String constraint, int start, String text, int textStart) {
+        for (int i = start; i < constraint.length(); i++) {
+            textStart = text.indexOf(constraint.charAt(i), textStart);
+            if (textStart < 0)
+                return false;
+            textStart++;
+        }
+        return true;
+    }
+
+    private static int findWordStart(String text, char c, int from) {
+        for (int i = text.indexOf(c, from); i >= 0; i = text.indexOf(c, i + 1)) {
+            if (isWordStart(text, i))
+                return i;
+        }
+        return -1;
+    }
+}
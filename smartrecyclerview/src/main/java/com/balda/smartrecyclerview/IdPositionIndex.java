@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Map from item id to position that follows insertions and removals without visiting all
+ * the entries: the shifts are recorded in {@link PositionShifts} and applied to the stored
+ * positions on lookup. The positions of the items inserted in the middle have no stored
+ * position mapping to them, they're kept apart with their current position. Once the
+ * shifts are more than about the square root of the entries, they're applied to all the
+ * entries in a single pass.
+ */
+final class IdPositionIndex {
+
+    private static final int MIN_PENDING_SHIFTS = 16;
+
+    /**
+     * Stored positions, mapped to the current ones by the shifts
+     */
+    private final LongIntMap positions;
+    /**
+     * Current positions of the items that have no stored position
+     */
+    private final LongIntMap inserted = new LongIntMap();
+    private final PositionShifts shifts = new PositionShifts();
+
+    IdPositionIndex(int expectedSize) {
+        positions = new LongIntMap(expectedSize);
+    }
+
+    /**
+     * @return The current position of the id or {@link RecyclerView#NO_POSITION} if not indexed
+     */
+    int get(long id) {
+        final int position = inserted.get(id, RecyclerView.NO_POSITION);
+        if (position != RecyclerView.NO_POSITION)
+            return position;
+        final int stored = positions.get(id, RecyclerView.NO_POSITION);
+        return stored != RecyclerView.NO_POSITION ? shifts.current(stored) : RecyclerView.NO_POSITION;
+    }
+
+    void put(long id, int position) {
+        final int stored = shifts.stored(position);
+        if (stored != RecyclerView.NO_POSITION) {
+            inserted.remove(id);
+            positions.put(id, stored);
+        } else {
+            positions.remove(id);
+            inserted.put(id, position);
+            if (inserted.size() > maxPendingShifts())
+                applyShifts();
+        }
+    }
+
+    void remove(long id) {
+        if (!inserted.remove(id))
+            positions.remove(id);
+    }
+
+    void clear() {
+        positions.clear();
+        inserted.clear();
+        shifts.clear();
+    }
+
+    /**
+     * Shift the positions from the given one after an insertion
+     */
+    void shiftInserted(int position, int count) {
+        shiftValues(inserted, position, count);
+        shifts.inserted(position, count);
+        if (shifts.count() > maxPendingShifts())
+            applyShifts();
+    }
+
+    /**
+     * Shift the positions following the removed ones. The entries of the removed items must be
+     * removed by the caller.
+     */
+    void shiftRemoved(int position, int count) {
+        if (shifts.count() + count > maxPendingShifts()) {
+            applyShifts();
+            shiftValues(positions, position + count, -count);
+            return;
+        }
+        shiftValues(inserted, position + count, -count);
+        for (int i = 0; i < count; i++) {
+            shifts.removed(position);
+        }
+    }
+
+    private static void shiftValues(LongIntMap map, int from, int delta) {
+        for (int slot = 0; slot < map.slotCount(); slot++) {
+            if (map.isSlotUsed(slot) && map.valueAt(slot) >= from)
+                map.setValueAt(slot, map.valueAt(slot) + delta);
+        }
+    }
+
+    private int maxPendingShifts() {
+        return Math.max(MIN_PENDING_SHIFTS, (int) Math.sqrt(positions.size()));
+    }
+
+    /**
+     * Replace the stored positions with the current ones and merge the inserted items
+     */
+    private void applyShifts() {
+        if (shifts.count() > 0) {
+            for (int slot = 0; slot < positions.slotCount(); slot++) {
+                if (positions.isSlotUsed(slot))
+                    positions.setValueAt(slot, shifts.current(positions.valueAt(slot)));
+            }
+            shifts.clear();
+        }
+        for (int slot = 0; slot < inserted.slotCount(); slot++) {
+            if (inserted.isSlotUsed(slot))
+                positions.put(inserted.keyAt(slot), inserted.valueAt(slot));
+        }
+        inserted.clear();
+    }
+}
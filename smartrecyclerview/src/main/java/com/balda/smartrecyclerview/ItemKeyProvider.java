@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Provides the identity and the contents signature of the items of a
+ * {@link RecyclerArrayAdapter}. When set, it's used to compare the items
+ * during a refresh and as item ids, which are stable if the adapter has stable ids.
+ * Both methods are called very often and also from background threads, they
+ * should be cheap and they should not allocate memory.
+ * @param <T> The type of the items
+ */
+public interface ItemKeyProvider<T> {
+    /**
+     * Return the key of the item. Two items with the same key represent the same
+     * entity, even if the content is changed. The key is also used as item id.
+     * @param item The item
+     * @return The key of the item
+     */
+    long getKey(@NonNull T item);
+
+    /**
+     * Return a hash of the contents shown by the item. Two items with the same key and
+     * the same content hash are considered unchanged, so the hash should include all the
+     * fields displayed by the view holder.
+     * @param item The item
+     * @return The content hash
+     */
+    long getContentHash(@NonNull T item);
+}
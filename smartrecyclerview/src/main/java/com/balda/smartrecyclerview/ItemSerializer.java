@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Serializer of the items saved in a snapshot, see
+ * {@link RecyclerArrayAdapter#saveSnapshot(java.io.File, ItemSerializer, int, int)}
+ * @param <T> The type of the items
+ */
+public interface ItemSerializer<T> {
+    /**
+     * Write an item, using at least one byte
+     */
+    void write(@NonNull T item, @NonNull DataOutput out) throws IOException;
+
+    @NonNull
+    T read(@NonNull DataInput in) throws IOException;
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Records list updates to dispatch them later, possibly from another thread.
+ */
+final class ListUpdateRecorder implements ListUpdateCallback {
+
+    private static final int INSERTED = 0;
+    private static final int REMOVED = 1;
+    private static final int MOVED = 2;
+    private static final int CHANGED = 3;
+
+    /**
+     * Triples of (type, position, count or target position)
+     */
+    private int[] operations = new int[24];
+    /**
+     * Payloads of the changes, indexed by operation
+     */
+    @Nullable
+    private Object[] payloads;
+    private int size;
+
+    private void record(int type, int position, int value) {
+        if (size + 3 > operations.length)
+            operations = Arrays.copyOf(operations, operations.length * 2);
+        if (payloads != null && payloads.length < operations.length / 3)
+            payloads = Arrays.copyOf(payloads, operations.length / 3);
+        operations[size++] = type;
+        operations[size++] = position;
+        operations[size++] = value;
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+        record(INSERTED, position, count);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        record(REMOVED, position, count);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        record(MOVED, fromPosition, toPosition);
+    }
+
+    @Override
+    public void onChanged(int position, int count, @Nullable Object payload) {
+        if (payload != null && payloads == null)
+            payloads = new Object[operations.length / 3];
+        record(CHANGED, position, count);
+        if (payloads != null)
+            payloads[size / 3 - 1] = payload;
+    }
+
+    void dispatchTo(@NonNull ListUpdateCallback callback) {
+        for (int i = 0; i < size; i += 3) {
+            switch (operations[i]) {
+                case INSERTED:
+                    callback.onInserted(operations[i + 1], operations[i + 2]);
+                    break;
+                case REMOVED:
+                    callback.onRemoved(operations[i + 1], operations[i + 2]);
+                    break;
+                case MOVED:
+                    callback.onMoved(operations[i + 1], operations[i + 2]);
+                    break;
+                default:
+                    callback.onChanged(operations[i + 1], operations[i + 2], payloads != null ? payloads[i / 3] :
+                            null);
+                    break;
+            }
+        }
+    }
+}
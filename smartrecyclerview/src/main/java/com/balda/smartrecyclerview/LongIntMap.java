@@ -0,0 +1,201 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Open addressing hash map from long keys to int values without boxing.
+ * Linear probing is used, removed entries are compacted with backward shift, so
+ * no tombstones are left. The key 0 is used to mark free slots and it's stored
+ * in an additional slot at the end of the arrays.
+ * Entries can be iterated by slot, from 0 to {@link #slotCount()} excluded, skipping
+ * the slots for which {@link #isSlotUsed(int)} is false.
+ */
+final class LongIntMap {
+
+    private static final int MIN_CAPACITY = 8;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+    private int resizeThreshold;
+
+    LongIntMap() {
+        this(0);
+    }
+
+    LongIntMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity + 1];
+        values = new int[capacity + 1];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int indexOf(long key) {
+        if (key == 0)
+            return hasZeroKey ? mask + 1 : -1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key)
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    int get(long key, int defaultValue) {
+        final int slot = indexOf(key);
+        return slot >= 0 ? values[slot] : defaultValue;
+    }
+
+    void put(long key, int value) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            values[mask + 1] = value;
+            return;
+        }
+        int slot = hash(key) & mask;
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold)
+            rehash((mask + 1) << 1);
+    }
+
+    boolean remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey)
+                return false;
+            hasZeroKey = false;
+            size--;
+            return true;
+        }
+        int slot = indexOf(key);
+        if (slot < 0)
+            return false;
+        // Backward shift: move back the entries of the same probe sequence
+        int next = (slot + 1) & mask;
+        while (keys[next] != 0) {
+            final int ideal = hash(keys[next]) & mask;
+            if (((next - ideal) & mask) >= ((next - slot) & mask)) {
+                keys[slot] = keys[next];
+                values[slot] = values[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[slot] = 0;
+        size--;
+        return true;
+    }
+
+    void clear() {
+        if (size == 0)
+            return;
+        Arrays.fill(keys, 0);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    private void rehash(int capacity) {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        final int oldSlots = mask + 1;
+        final boolean zero = hasZeroKey;
+        final int zeroValue = values[oldSlots];
+        allocate(capacity);
+        size = 0;
+        hasZeroKey = false;
+        for (int i = 0; i < oldSlots; i++) {
+            if (oldKeys[i] != 0)
+                put(oldKeys[i], oldValues[i]);
+        }
+        if (zero)
+            put(0, zeroValue);
+    }
+
+    int slotCount() {
+        return mask + 2;
+    }
+
+    boolean isSlotUsed(int slot) {
+        return slot == mask + 1 ? hasZeroKey : keys[slot] != 0;
+    }
+
+    long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    int valueAt(int slot) {
+        return values[slot];
+    }
+
+    void setValueAt(int slot, int value) {
+        values[slot] = value;
+    }
+
+    /**
+     * @return The keys of the map, sorted
+     */
+    @NonNull
+    long[] keys() {
+        final long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < slotCount(); i++) {
+            if (isSlotUsed(i))
+                result[n++] = keys[i];
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
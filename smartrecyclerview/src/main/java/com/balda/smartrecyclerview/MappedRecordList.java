@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Read only list of records stored in a file, memory mapped and decoded only when read.
+ * Opening it doesn't read the data file, so it takes the same time for any size of the records
+ * and the heap used doesn't depend on the size of the file: the pages of the file are loaded
+ * by the system when accessed. Records can have a fixed size or can be located by an index file,
+ * which is read once when opening to validate the offsets.
+ * Files up to 2GB are supported.
+ * @param <T> The type of the items
+ */
+public class MappedRecordList<T> extends AbstractList<T> implements RandomAccess {
+
+    private final ByteBuffer data;
+    /**
+     * Offsets of the records, null if they have a fixed size
+     */
+    private final IntBuffer offsets;
+    private final int headerSize;
+    private final int recordSize;
+    private final int size;
+    private final RecordDecoder<T> decoder;
+
+    /**
+     * Map a file of records with a fixed size
+     * @param file The file
+     * @param headerSize The number of bytes to skip at the beginning of the file
+     * @param recordSize The size of a record
+     * @param decoder The decoder of the records
+     * @throws IOException If the file can't be mapped
+     */
+    public MappedRecordList(@NonNull File file, int headerSize, int recordSize, @NonNull RecordDecoder<T> decoder)
+            throws IOException {
+        if (recordSize <= 0 || headerSize < 0)
+            throw new IllegalArgumentException("Invalid record layout");
+        this.data = map(file);
+        this.offsets = null;
+        this.headerSize = headerSize;
+        this.recordSize = recordSize;
+        this.size = Math.max(0, (data.capacity() - headerSize) / recordSize);
+        this.decoder = decoder;
+    }
+
+    /**
+     * Map a file of records with a variable size. The index file contains the offset of
+     * each record in the data file as a 32 bit big endian integer, in the order of the list.
+     * A record ends where the next one starts or at the end of the data file.
+     * @param file The data file
+     * @param indexFile The index file
+     * @param decoder The decoder of the records
+     * @throws IOException If the files can't be mapped or the index file is not valid
+     */
+    public MappedRecordList(@NonNull File file, @NonNull File indexFile, @NonNull RecordDecoder<T> decoder)
+            throws IOException {
+        this.data = map(file);
+        final ByteBuffer index = map(indexFile);
+        if (index.capacity() % 4 != 0)
+            throw new IOException("Index file with a partial offset: " + indexFile);
+        this.offsets = index.asIntBuffer();
+        checkOffsets(offsets, data.capacity(), indexFile);
+        this.headerSize = 0;
+        this.recordSize = 0;
+        this.size = offsets.capacity();
+        this.decoder = decoder;
+    }
+
+    /**
+     * Check that the offsets are not decreasing and within the data, so that every record
+     * has a valid range when it's read
+     */
+    private static void checkOffsets(IntBuffer offsets, int capacity, File indexFile) throws IOException {
+        int previous = 0;
+        for (int i = 0; i < offsets.capacity(); i++) {
+            final int offset = offsets.get(i);
+            if (offset < previous || offset > capacity)
+                throw new IOException("Invalid offset " + offset + " of record " + i + " in " + indexFile);
+            previous = offset;
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("File too large to be mapped: " + file);
+            // The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Decode a record, a new item is returned at each call
+     * @param index The position of the record
+     * @return The item
+     */
+    @Override
+    @NonNull
+    public T get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        if (offsets == null)
+            return decoder.decode(data, headerSize + index * recordSize, recordSize);
+        final int offset = offsets.get(index);
+        final int end = index + 1 < size ? offsets.get(index + 1) : data.capacity();
+        return decoder.decode(data, offset, end - offset);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Ranges of the text of an item matched by a {@link Matcher}. They are stored as
+ * pairs of start (inclusive) and end (exclusive) offsets, adjacent ranges are merged.
+ */
+public final class MatchSpans {
+
+    private int[] spans = new int[8];
+    private int size;
+
+    /**
+     * Add a matched range
+     * @param start The start offset, inclusive
+     * @param end The end offset, exclusive
+     */
+    public void add(int start, int end) {
+        if (size > 0 && spans[size - 1] == start) {
+            spans[size - 1] = end;
+            return;
+        }
+        if (size + 2 > spans.length)
+            spans = Arrays.copyOf(spans, spans.length * 2);
+        spans[size++] = start;
+        spans[size++] = end;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return The number of ranges
+     */
+    public int size() {
+        return size / 2;
+    }
+
+    /**
+     * @return The ranges as pairs of start and end offsets
+     */
+    @NonNull
+    public int[] toArray() {
+        return Arrays.copyOf(spans, size);
+    }
+}
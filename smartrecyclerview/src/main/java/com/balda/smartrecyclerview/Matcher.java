@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Strategy used by the filter of {@link RecyclerArrayAdapter} to match the items
+ * against the constraint, see {@link RecyclerArrayAdapter#setMatcher(Matcher)}.
+ * Matchers are called from background threads, possibly from several threads at the
+ * same time, so they must be stateless or thread safe.
+ * @param <T> The type of the items
+ */
+public interface Matcher<T> {
+    /**
+     * Score returned for items not matching the constraint
+     */
+    int NO_MATCH = Integer.MIN_VALUE;
+
+    /**
+     * Match an item against the constraint
+     * @param item The item
+     * @param text The normalized text of the item, see {@link RecyclerArrayAdapter#getFilterText(Object)}
+     * @param constraint The normalized constraint
+     * @param spans If not null, the matched ranges of the text must be added to it
+     * @return The score of the item, higher is better, or {@link #NO_MATCH}
+     */
+    int match(@NonNull T item, @NonNull String text, @NonNull String constraint, @Nullable MatchSpans spans);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Source of the items of a {@link PagedList}. The methods are called on a background thread.
+ * @param <T> The type of the items
+ */
+public interface PageLoader<T> {
+    /**
+     * Count the items matching a filter constraint
+     * @param constraint The normalized constraint, null for all the items
+     * @return The number of items
+     */
+    @WorkerThread
+    int count(@Nullable String constraint);
+
+    /**
+     * Load a range of the items matching a filter constraint
+     * @param constraint The normalized constraint, null for all the items
+     * @param start The position of the first item
+     * @param count The number of items to load
+     * @return The items, less than count if the range is past the end
+     */
+    @WorkerThread
+    @NonNull
+    List<T> load(@Nullable String constraint, int start, int count);
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.AbstractList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Read only list of a fixed number of items loaded lazily in pages by a {@link PageLoader}.
+ * Reading an item of a page not loaded yet returns null, a placeholder, and starts loading the page
+ * on a background executor. Only the most recently used pages are kept in memory, so the size of
+ * the list is not limited by the heap. The items can't be replaced: a change would be lost
+ * when its page is evicted.
+ * It must be accessed only from the main thread, see {@link RecyclerArrayAdapter#setPagedList(PagedList)}.
+ * @param <T> The type of the items
+ */
+@MainThread
+public class PagedList<T> extends AbstractList<T> {
+
+    /**
+     * Notified when a page is loaded
+     */
+    interface Callback {
+        void onPageLoaded(PagedList<?> list, int start, int count);
+    }
+
+    private final PageLoader<T> loader;
+    @Nullable
+    private final String constraint;
+    private final int size;
+    private final int pageSize;
+    private final int maxPages;
+    private final Map<Integer, Object[]> pages;
+    private final Set<Integer> loading = new HashSet<>();
+    /**
+     * Incremented by {@link #invalidate()}, a page loaded before is dropped
+     */
+    private int generation;
+    @Nullable
+    private Executor executor;
+    @Nullable
+    private Callback callback;
+
+    /**
+     * @param loader The loader of the pages
+     * @param size The total number of items
+     * @param pageSize The number of items of a page
+     * @param maxPages The number of pages kept in memory, it should be enough to cover at least
+     *                 twice the items shown at the same time
+     */
+    public PagedList(@NonNull PageLoader<T> loader, int size, int pageSize, int maxPages) {
+        this(loader, null, size, pageSize, maxPages, null);
+    }
+
+    private PagedList(@NonNull PageLoader<T> loader, @Nullable String constraint, int size, int pageSize,
+                      final int maxPages, @Nullable Executor executor) {
+        if (pageSize <= 0 || maxPages <= 0)
+            throw new IllegalArgumentException("Page size and number of pages must be positive");
+        this.loader = loader;
+        this.constraint = constraint;
+        this.size = size;
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.executor = executor;
+        pages = new LinkedHashMap<Integer, Object[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * Set the executor used to load the pages. By default a shared background thread is used.
+     * @param executor The executor or null to use the default one
+     */
+    public void setExecutor(@Nullable Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Return a list of the items matching a filter constraint with the same loader and settings.
+     * The items are counted on the calling thread.
+     * @param constraint The normalized constraint, null for all the items
+     */
+    @NonNull
+    PagedList<T> withConstraint(@Nullable String constraint) {
+        return new PagedList<>(loader, constraint, loader.count(constraint), pageSize, maxPages, executor);
+    }
+
+    void setCallback(@Nullable Callback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return an item. If its page is not loaded, it starts loading it. The following or
+     * previous page is prefetched when the item is in the last or first quarter of its page.
+     * @param index The position of the item
+     * @return The item or null if not loaded yet
+     */
+    @Override
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        final int page = index / pageSize;
+        final int offset = index - page * pageSize;
+        if (offset >= pageSize - pageSize / 4 && (page + 1) * pageSize < size)
+            ensurePage(page + 1);
+        else if (offset < pageSize / 4 && page > 0)
+            ensurePage(page - 1);
+        final Object[] items = pages.get(page);
+        if (items == null) {
+            ensurePage(page);
+            return null;
+        }
+        return offset < items.length ? (T) items[offset] : null;
+    }
+
+    /**
+     * @return True if the item is loaded. The page is not marked as used, so checking many
+     * items doesn't change which pages are evicted.
+     */
+    public boolean isLoaded(int index) {
+        // A loaded page holds all its items, only the last one is shorter
+        return index >= 0 && index < size && pages.containsKey(index / pageSize);
+    }
+
+    /**
+     * Search only the loaded items, an item not loaded is not found
+     */
+    @Override
+    public int indexOf(Object o) {
+        return findLoaded(o, false);
+    }
+
+    /**
+     * Search only the loaded items, an item not loaded is not found
+     */
+    @Override
+    public int lastIndexOf(Object o) {
+        return findLoaded(o, true);
+    }
+
+    private int findLoaded(Object o, boolean last) {
+        int result = -1;
+        for (Map.Entry<Integer, Object[]> entry : pages.entrySet()) {
+            final Object[] items = entry.getValue();
+            final int start = entry.getKey() * pageSize;
+            for (int j = 0; j < items.length; j++) {
+                final int i = last ? items.length - 1 - j : j;
+                if (o == null ? items[i] == null : o.equals(items[i])) {
+                    final int position = start + i;
+                    if (result < 0 || (last ? position > result : position < result))
+                        result = position;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the position of the first loaded item with the given key. The pages are read
+     * directly, so their order of use is not changed and nothing is loaded.
+     * @return The position or -1 if not found
+     */
+    @SuppressWarnings("unchecked")
+    int findLoaded(@NonNull ItemKeyProvider<? super T> keyProvider, long key) {
+        int result = -1;
+        for (Map.Entry<Integer, Object[]> entry : pages.entrySet()) {
+            final Object[] items = entry.getValue();
+            final int start = entry.getKey() * pageSize;
+            for (int i = 0; i < items.length && (result < 0 || start + i < result); i++) {
+                final T item = (T) items[i];
+                if (item != null && keyProvider.getKey(item) == key) {
+                    result = start + i;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drop the loaded pages, they are loaded again when read. The pages still loading are
+     * dropped when they complete. The adapter showing the list is notified that all the
+     * items changed, so the rows already bound are bound again.
+     */
+    public void invalidate() {
+        pages.clear();
+        loading.clear();
+        generation++;
+        if (callback != null && size > 0)
+            callback.onPageLoaded(this, 0, size);
+    }
+
+    private void ensurePage(final int page) {
+        if (pages.containsKey(page) || !loading.add(page))
+            return;
+        final int start = page * pageSize;
+        final int count = Math.min(pageSize, size - start);
+        final int loadGeneration = generation;
+        final Executor loadExecutor = executor != null ? executor : AdapterExecutors.background();
+        loadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<T> items;
+                try {
+                    items = loader.load(constraint, start, count);
+                } catch (RuntimeException e) {
+                    // Loaded again the next time it's read
+                    items = null;
+                }
+                final Object[] loaded = items != null ? items.toArray() : null;
+                AdapterExecutors.mainThread().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (loadGeneration != generation || !loading.remove(page) || loaded == null)
+                            return;
+                        pages.put(page, loaded);
+                        if (callback != null)
+                            callback.onPageLoaded(PagedList.this, start, count);
+                    }
+                });
+            }
+        });
+    }
+}
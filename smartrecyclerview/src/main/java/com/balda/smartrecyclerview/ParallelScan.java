@@ -0,0 +1,175 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Linear scans split in chunks executed in parallel. Below the threshold the scan runs
+ * on the calling thread only. The calling thread always processes the first chunk and
+ * then waits for the others, results are merged in order.
+ */
+final class ParallelScan {
+
+    /**
+     * Number of items scanned between two checks of the cancellation
+     */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    interface Predicate {
+        /**
+         * It can be called from several threads at the same time
+         */
+        boolean matches(int index);
+    }
+
+    interface Cancellation {
+        boolean isCancelled();
+    }
+
+    abstract static class Task {
+        /**
+         * Process the items in [from, to). It can be called from several threads
+         * at the same time for different ranges.
+         * @return False to stop because of a cancellation
+         */
+        abstract boolean process(int chunk, int from, int to);
+    }
+
+    private final Executor executor;
+    private final int threshold;
+    private final int parallelism;
+
+    ParallelScan(@NonNull Executor executor, int threshold, int parallelism) {
+        this.executor = executor;
+        this.threshold = threshold;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    private int chunkCount(int count) {
+        if (count < threshold || parallelism == 1)
+            return 1;
+        // A few chunks per thread to balance uneven costs
+        return Math.max(1, Math.min(parallelism * 4, count / Math.max(1, threshold / parallelism)));
+    }
+
+    /**
+     * Run the task over [0, count)
+     * @return The number of chunks the range has been split into, or -1 if cancelled
+     */
+    int forEach(int count, @NonNull final Task task) {
+        final int chunks = chunkCount(count);
+        final int chunkSize = (count + chunks - 1) / Math.max(1, chunks);
+        if (chunks <= 1)
+            return task.process(0, 0, count) ? 1 : -1;
+
+        final CountDownLatch latch = new CountDownLatch(chunks - 1);
+        final boolean[] completed = new boolean[chunks];
+        // Any failure of a chunk, errors included, is thrown again on the calling thread
+        final Throwable[] failure = new Throwable[1];
+        for (int c = 1; c < chunks; c++) {
+            final int chunk = c;
+            final int from = Math.min(count, chunk * chunkSize);
+            final int to = Math.min(count, from + chunkSize);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        completed[chunk] = task.process(chunk, from, to);
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        completed[0] = task.process(0, 0, Math.min(count, chunkSize));
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+        synchronized (failure) {
+            if (failure[0] instanceof RuntimeException)
+                throw (RuntimeException) failure[0];
+            if (failure[0] instanceof Error)
+                throw (Error) failure[0];
+            if (failure[0] != null)
+                throw new RuntimeException(failure[0]);
+        }
+        for (boolean c : completed) {
+            if (!c)
+                return -1;
+        }
+        return chunks;
+    }
+
+    /**
+     * Find the indexes in [0, count) matching the predicate
+     * @return The sorted matching indexes or null if cancelled
+     */
+    @Nullable
+    int[] scan(final int count, @NonNull final Predicate predicate, @Nullable final Cancellation cancellation) {
+        final int[][] results = new int[chunkCount(count)][];
+        final int[] sizes = new int[results.length];
+        final int chunks = forEach(count, new Task() {
+            @Override
+            boolean process(int chunk, int from, int to) {
+                int[] result = new int[Math.min(to - from, 16)];
+                int n = 0;
+                for (int i = from; i < to; i++) {
+                    if (cancellation != null && (i - from) % CANCELLATION_CHECK_INTERVAL == 0 &&
+                            cancellation.isCancelled())
+                        return false;
+                    if (predicate.matches(i)) {
+                        if (n == result.length)
+                            result = Arrays.copyOf(result, Math.min(to - from, n * 2));
+                        result[n++] = i;
+                    }
+                }
+                results[chunk] = result;
+                sizes[chunk] = n;
+                return true;
+            }
+        });
+        if (chunks < 0)
+            return null;
+        if (chunks == 1)
+            return sizes[0] == results[0].length ? results[0] : Arrays.copyOf(results[0], sizes[0]);
+        int total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        final int[] merged = new int[total];
+        int offset = 0;
+        for (int c = 0; c < chunks; c++) {
+            System.arraycopy(results[c], 0, merged, offset, sizes[c]);
+            offset += sizes[c];
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Insertions and removals recorded as offsets over a set of stored positions, so that the
+ * positions don't have to be updated one by one. Offset i is added to the stored positions
+ * from starts[i] to starts[i + 1] excluded, the ones below the first start are not shifted.
+ * The current positions never decrease with the stored ones, so they're mapped both ways
+ * with a binary search. The owner applies the shifts to its positions and clears them once
+ * they're too many.
+ */
+final class PositionShifts {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] starts;
+    private int[] offsets;
+    private int count;
+
+    PositionShifts() {
+        starts = new int[INITIAL_CAPACITY];
+        offsets = new int[INITIAL_CAPACITY];
+    }
+
+    PositionShifts(@NonNull PositionShifts other) {
+        starts = other.starts.clone();
+        offsets = other.offsets.clone();
+        count = other.count;
+    }
+
+    /**
+     * @return The number of recorded shifts
+     */
+    int count() {
+        return count;
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    /**
+     * Shift the positions from the given one after an insertion
+     */
+    void inserted(int position, int itemCount) {
+        shift(position, itemCount);
+    }
+
+    /**
+     * Shift the positions following a removed one. The stored position of the removed item
+     * then maps to the same position as the next one, the owner must drop it.
+     */
+    void removed(int position) {
+        // One item at a time, otherwise the stored positions of the removed items would be
+        // mapped after the following ones
+        shift(position + 1, -1);
+    }
+
+    private void shift(int from, int delta) {
+        // The first stored position whose current position is shifted
+        int start = -1;
+        int segment = -1;
+        for (int i = -1; i < count; i++) {
+            final int segmentStart = i < 0 ? 0 : starts[i];
+            final int offset = i < 0 ? 0 : offsets[i];
+            final int candidate = Math.max(segmentStart, from - offset);
+            if (i + 1 == count || candidate < starts[i + 1]) {
+                start = candidate;
+                segment = i;
+                break;
+            }
+        }
+        int index = segment + 1;
+        if (segment < 0 || starts[segment] != start) {
+            if (count == starts.length) {
+                final int[] newStarts = new int[count * 2];
+                final int[] newOffsets = new int[count * 2];
+                System.arraycopy(starts, 0, newStarts, 0, count);
+                System.arraycopy(offsets, 0, newOffsets, 0, count);
+                starts = newStarts;
+                offsets = newOffsets;
+            }
+            System.arraycopy(starts, index, starts, index + 1, count - index);
+            System.arraycopy(offsets, index, offsets, index + 1, count - index);
+            starts[index] = start;
+            offsets[index] = segment < 0 ? 0 : offsets[segment];
+            count++;
+        } else {
+            index = segment;
+        }
+        for (int i = index; i < count; i++) {
+            offsets[i] += delta;
+        }
+    }
+
+    /**
+     * @return The current position of a stored one
+     */
+    int current(int stored) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (starts[mid] <= stored)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high < 0 ? stored : stored + offsets[high];
+    }
+
+    /**
+     * @return The last stored position mapped to the current one, {@link RecyclerView#NO_POSITION}
+     * if none is, as for the positions of inserted items
+     */
+    int stored(int position) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (starts[mid] + offsets[mid] <= position)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        final int stored = high < 0 ? position : position - offsets[high];
+        if (stored < 0 || high + 1 < count && stored >= starts[high + 1])
+            return RecyclerView.NO_POSITION;
+        return stored;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.SparseIntArray;
+
+import java.util.ArrayList;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Recycled view pool filled in advance with a configurable number of holders for each
+ * view type, so that scrolling doesn't inflate them. When holders are taken from the pool
+ * leaving less than that number, it's filled again. The holders are created on
+ * the main thread while its queue is idle, one for each idle pass, by the adapter of an
+ * attached {@link SmartRecycleView} using the pool, see
+ * {@link SmartRecycleView#setRecycledViewPool(RecyclerView.RecycledViewPool)}. The pool can be shared
+ * by several views whose adapters create interchangeable holders for the same view types.
+ */
+@MainThread
+public class PrewarmedViewPool extends RecyclerView.RecycledViewPool {
+
+    /**
+     * Maximum number of recycled views of a type when not set, the same as {@link RecyclerView.RecycledViewPool}
+     */
+    private static final int DEFAULT_MAX_RECYCLED_VIEWS = 5;
+    /**
+     * Posted to run the idle handler again, the queue calls it once each time it becomes idle
+     */
+    private static final Runnable NEXT_IDLE = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private final SparseIntArray targets = new SparseIntArray();
+    /**
+     * Maximum number of recycled views set for each view type, the pool keeps more while prewarming
+     */
+    private final SparseIntArray limits = new SparseIntArray();
+    private final ArrayList<RecyclerView> hosts = new ArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final MessageQueue.IdleHandler idleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            if (!prewarmNext()) {
+                scheduled = false;
+                return false;
+            }
+            handler.post(NEXT_IDLE);
+            return true;
+        }
+    };
+    private boolean scheduled;
+
+    /**
+     * Set the number of holders to create in advance for a view type. The maximum number
+     * of recycled views of the type is raised to the same value if lower, and it's restored
+     * when the prewarming of the type is disabled.
+     * @param viewType The view type
+     * @param count The number of holders, 0 to disable the prewarming of the type
+     */
+    public void setPrewarmCount(int viewType, int count) {
+        if (count < 0)
+            throw new IllegalArgumentException("count < 0");
+        final int limit = limits.get(viewType, DEFAULT_MAX_RECYCLED_VIEWS);
+        if (count == 0) {
+            if (targets.indexOfKey(viewType) >= 0) {
+                targets.delete(viewType);
+                // The holders above the limit are dropped
+                super.setMaxRecycledViews(viewType, limit);
+            }
+            return;
+        }
+        targets.put(viewType, count);
+        super.setMaxRecycledViews(viewType, Math.max(count, limit));
+        schedule();
+    }
+
+    public int getPrewarmCount(int viewType) {
+        return targets.get(viewType);
+    }
+
+    @Override
+    public void setMaxRecycledViews(int viewType, int max) {
+        limits.put(viewType, max);
+        super.setMaxRecycledViews(viewType, Math.max(max, targets.get(viewType)));
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        schedule();
+    }
+
+    @Nullable
+    @Override
+    public RecyclerView.ViewHolder getRecycledView(int viewType) {
+        final RecyclerView.ViewHolder holder = super.getRecycledView(viewType);
+        if (holder != null && getRecycledViewCount(viewType) < targets.get(viewType))
+            schedule();
+        return holder;
+    }
+
+    void attach(@NonNull RecyclerView host) {
+        if (!hosts.contains(host))
+            hosts.add(host);
+        schedule();
+    }
+
+    void detach(@NonNull RecyclerView host) {
+        hosts.remove(host);
+        if (hosts.isEmpty() && scheduled) {
+            Looper.myQueue().removeIdleHandler(idleHandler);
+            handler.removeCallbacks(NEXT_IDLE);
+            scheduled = false;
+        }
+    }
+
+    void schedule() {
+        if (scheduled || hosts.isEmpty() || nextViewType() == RecyclerView.INVALID_TYPE)
+            return;
+        scheduled = true;
+        Looper.myQueue().addIdleHandler(idleHandler);
+    }
+
+    /**
+     * Create one holder
+     * @return True if there are other holders to create
+     */
+    private boolean prewarmNext() {
+        final int viewType = nextViewType();
+        if (viewType == RecyclerView.INVALID_TYPE)
+            return false;
+        RecyclerView host = null;
+        for (int i = 0; i < hosts.size(); i++) {
+            if (hosts.get(i).getAdapter() != null) {
+                host = hosts.get(i);
+                break;
+            }
+        }
+        if (host == null)
+            return false;
+        RecyclerView.ViewHolder holder = host.getAdapter().createViewHolder(host, viewType);
+        putRecycledView(holder);
+        return nextViewType() != RecyclerView.INVALID_TYPE;
+    }
+
+    private int nextViewType() {
+        for (int i = 0; i < targets.size(); i++) {
+            final int viewType = targets.keyAt(i);
+            if (getRecycledViewCount(viewType) < targets.valueAt(i))
+                return viewType;
+        }
+        return RecyclerView.INVALID_TYPE;
+    }
+}
@@ -18,21 +18,35 @@
 package com.balda.smartrecyclerview;
 
 import android.content.Context;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Filter;
 import android.widget.Filterable;
 
 import com.balda.smartrecyclerview.touchhelper.ItemTouchHelperAdapter;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import androidx.annotation.LayoutRes;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.os.TraceCompat;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.BatchingListUpdateCallback;
 import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 /**
@@ -44,6 +58,8 @@ import androidx.recyclerview.widget.RecyclerView;
 public abstract class RecyclerArrayAdapter<T, VH extends BaseViewHolder> extends RecyclerView.Adapter<VH>
         implements DragListener, ItemTouchHelperAdapter, Filterable {
 
+    private static final String TAG = "RecyclerArrayAdapter";
+
     /**
      * Lock used to modify the content of {@link #objects}. Any write operation
      * performed on the array should be synchronized on this lock. This lock is also
@@ -63,6 +79,121 @@ public abstract class RecyclerArrayAdapter<T, VH extends BaseViewHolder> extends
      */
     protected ArrayList<T> originalValues;
     protected ArrayFilter filter;
+    /**
+     * Search index over {@link #originalValues}, built on demand by the filter. While filterings
+     * are querying it out of the lock, it's copied before being modified, so they never see a
+     * change in the middle of a query.
+     */
+    @Nullable
+    private SearchIndex searchIndex;
+    /**
+     * Incremented with the lock held at every change of {@link #originalValues}, to detect
+     * if the items scanned by the filter out of the lock are still the current ones
+     */
+    private int sourceVersion;
+    /**
+     * True if the last published filter constraint was not empty
+     */
+    private boolean filterActive;
+    /**
+     * Positions in {@link #originalValues} of the items in {@link #objects}, with their match
+     * spans, null if all the items are visible
+     */
+    @Nullable
+    private VisiblePositions visiblePositions;
+    /**
+     * Normalized constraint of the active filter, the items added while the filter is
+     * active are matched against it
+     */
+    @Nullable
+    private String filterConstraint;
+    @Nullable
+    private Matcher<T> matcher;
+    private int maxResults;
+    /**
+     * Incremented at every change of the dataset, it's used to detect stale filter results
+     */
+    private volatile int dataVersion;
+    /**
+     * Default number of items above which the filter scans in parallel
+     */
+    public static final int DEFAULT_PARALLEL_FILTER_THRESHOLD = 20000;
+    @Nullable
+    private Executor filterExecutor;
+    private int parallelFilterThreshold = DEFAULT_PARALLEL_FILTER_THRESHOLD;
+    /**
+     * Incremented by {@link #filter(CharSequence)} and at the start of every filtering, a running
+     * filtering stops when it changes
+     */
+    private final AtomicInteger filterRequest = new AtomicInteger();
+    private long filterDebounceMillis;
+    /**
+     * Filter call waiting for the debounce delay, null if none
+     */
+    @Nullable
+    private Runnable pendingFilter;
+    /**
+     * Unfiltered paged list, null if the items are not paged
+     */
+    @Nullable
+    private PagedList<T> pagedSource;
+    /**
+     * Unfiltered memory mapped list, null if the items are not mapped
+     */
+    @Nullable
+    private MappedRecordList<T> mappedSource;
+    private final PagedList.Callback pageCallback = new PagedList.Callback() {
+        @Override
+        public void onPageLoaded(PagedList<?> list, int start, int count) {
+            if (list == objects)
+                getUpdateCallback().onChanged(start, count, null);
+        }
+    };
+    /**
+     * Queries superseded since the last published one
+     */
+    private final AtomicInteger droppedQueries = new AtomicInteger();
+    @Nullable
+    private FilterMetrics.Listener filterMetricsListener;
+    @Nullable
+    private Executor diffExecutor;
+    @Nullable
+    private ItemKeyProvider<T> itemKeyProvider;
+    private boolean detectMoves = true;
+    /**
+     * Index from item key to position, available only with an item key provider
+     */
+    @Nullable
+    private IdPositionIndex idIndex;
+    /**
+     * The positions in the index are right only below this one. Insertions and removals
+     * shift the indexed positions, the items reordered by a ranked merge are indexed again
+     * by the next lookup.
+     */
+    private int idIndexValidTo;
+    private boolean idIndexEnabled;
+    private final ListUpdateCallback adapterUpdateCallback = new AdapterListUpdateCallback(this);
+    @Nullable
+    private BatchRecorder batch;
+    private int batchDepth;
+    /**
+     * Incremented every time the dataset changes or a new refresh is requested. An
+     * asynchronous diff is applied only if the generation is still the one it started with.
+     */
+    private int refreshGeneration;
+    @Nullable
+    private RefreshTask runningRefresh;
+    @Nullable
+    private List<T> pendingRefresh;
+    @Nullable
+    private RefreshErrorListener<T> refreshErrorListener;
+    /**
+     * Metrics of each view type, null if neither the metrics nor the trace sections are enabled
+     */
+    @Nullable
+    private SparseArray<ViewTypeMetrics> viewTypeMetrics;
+    private boolean viewTypeMetricsEnabled;
+    private boolean bindTraceEnabled;
 
     public RecyclerArrayAdapter(@NonNull Context c, final List<T> objects) {
         this.objects = objects;
@@ -104,236 +235,2061 @@ public abstract class RecyclerArrayAdapter<T, VH extends BaseViewHolder> extends
         return context;
     }
 
+    /**
+     * Add an item at the end of the list. While a filter is active, the item is added
+     * to the unfiltered items and it's shown only if it matches the constraint. The cost is
+     * then linear in the number of shown items if it matches, and in the number of indexed
+     * words if the search index of the filter is built.
+     * @param object The item
+     */
     public void add(final T object) {
+        checkMutable();
+        if (isLiveFiltered()) {
+            final ListUpdateRecorder updates = new ListUpdateRecorder();
+            synchronized (lock) {
+                liveInserted(originalValues.size(), object, updates);
+            }
+            invalidateRefresh();
+            updates.dispatchTo(getUpdateCallback());
+            return;
+        }
         synchronized (lock) {
             objects.add(object);
+            indexRange(objects.size() - 1, objects.size());
+            sourceInserted(objects.size() - 1, object);
         }
-        notifyItemInserted(getItemCount() - 1);
+        invalidateRefresh();
+        getUpdateCallback().onInserted(getItemCount() - 1, 1);
     }
 
     public void add(final Collection<? extends T> collection) {
+        checkMutable();
+        if (isLiveFiltered()) {
+            final ListUpdateRecorder updates = new ListUpdateRecorder();
+            final BatchingListUpdateCallback batching = new BatchingListUpdateCallback(updates);
+            synchronized (lock) {
+                liveAppended(collection, batching);
+            }
+            batching.dispatchLastEvent();
+            invalidateRefresh();
+            updates.dispatchTo(getUpdateCallback());
+            return;
+        }
         synchronized (lock) {
             objects.addAll(collection);
+            indexRange(objects.size() - collection.size(), objects.size());
+            for (int i = objects.size() - collection.size(); i < objects.size(); i++) {
+                sourceInserted(i, objects.get(i));
+            }
         }
-        notifyItemInserted(getItemCount() - collection.size());
+        invalidateRefresh();
+        getUpdateCallback().onInserted(getItemCount() - collection.size(), collection.size());
     }
 
-    public void clear() {
-        final int size = getItemCount();
-        synchronized (lock) {
-            objects.clear();
-        }
-        notifyItemRangeRemoved(0, size);
+    /**
+     * Start a batch of changes. Until {@link #commit()} is called, the changes made by
+     * add, insert, remove, clear, sort, refresh, onItemMove and onItemDismiss are only
+     * recorded. The outermost commit notifies the adapter, merging consecutive changes of
+     * the same type on adjacent ranges. If the whole dataset is replaced during the batch,
+     * by a paged or mapped list or by a filter, the commit notifies a single data set change
+     * instead. Batches can be nested. The batch must be committed on the main thread before
+     * the next layout.
+     */
+    public void beginBatch() {
+        if (batchDepth++ == 0)
+            batch = new BatchRecorder();
     }
 
     /**
-     * Utility method to reload a new dataset. It checks if items are new
-     * or modified or deleted to update the views. To define custom criteria,
-     * override {@see getDiffUtils} and extend DiffCallback class.
-     * @param collection The new dataset
+     * Commit a batch started with {@link #beginBatch()}
      */
-    public void refresh(List<T> collection) {
-        final DiffUtil.Callback diffCallback = getDiffUtil(objects, collection);
-        final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(diffCallback);
-        synchronized (lock) {
-            objects.clear();
-            objects.addAll(collection);
+    public void commit() {
+        if (batchDepth == 0)
+            throw new IllegalStateException("No batch in progress");
+        if (--batchDepth > 0)
+            return;
+        final BatchRecorder recorder = batch;
+        batch = null;
+        if (recorder.reset) {
+            notifyDataSetChanged();
+            return;
         }
-        diffResult.dispatchUpdatesTo(this);
+        final BatchingListUpdateCallback callback = new BatchingListUpdateCallback(adapterUpdateCallback);
+        recorder.updates.dispatchTo(callback);
+        callback.dispatchLastEvent();
     }
 
     /**
-     * By default it returns a DiffCallback class. Override if needed.
-     * @param objects The old list
-     * @param collection The new list
-     * @return A DiffUtil.Callback object
+     * @return True if a batch is in progress
      */
-    protected DiffUtil.Callback getDiffUtil(List<T> objects, List<T> collection) {
-        return new DiffCallback(objects, collection);
+    public boolean isInBatch() {
+        return batchDepth > 0;
     }
 
-    @Override
-    public int getItemCount() {
-        return objects.size();
+    /**
+     * Return the callback to use to notify structural changes: during a batch changes are
+     * recorded, otherwise the adapter is notified immediately.
+     */
+    @NonNull
+    protected ListUpdateCallback getUpdateCallback() {
+        return batch != null ? batch : adapterUpdateCallback;
     }
 
-    public T getItem(final int position) {
-        return objects.get(position);
+    /**
+     * Notify that the whole dataset changed. During a batch, the changes recorded so far don't
+     * apply to the new dataset: the batch is committed as a single data set change.
+     */
+    private void notifyReset() {
+        if (batch != null)
+            batch.reset = true;
+        else
+            notifyDataSetChanged();
     }
 
-    public long getItemId(final int position) {
-        return position;
-    }
+    /**
+     * Changes recorded during a batch
+     */
+    static final class BatchRecorder implements ListUpdateCallback {
+        final ListUpdateRecorder updates = new ListUpdateRecorder();
+        /**
+         * True if the dataset was replaced, then the changes are no longer recorded
+         */
+        boolean reset;
 
-    public int getPosition(final T item) {
-        return objects.indexOf(item);
-    }
+        @Override
+        public void onInserted(int position, int count) {
+            if (reset)
+                return;
+            updates.onInserted(position, count);
+        }
 
-    public void insert(final T object, int index) {
-        synchronized (lock) {
-            objects.add(index, object);
+        @Override
+        public void onRemoved(int position, int count) {
+            if (reset)
+                return;
+            updates.onRemoved(position, count);
         }
-        notifyItemInserted(index);
-    }
 
-    public void remove(T object) {
-        final int position = getPosition(object);
-        synchronized (lock) {
-            objects.remove(object);
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            if (reset)
+                return;
+            updates.onMoved(fromPosition, toPosition);
         }
-        notifyItemRemoved(position);
-        notifyItemRangeChanged(position, objects.size());
-    }
 
-    public void sort(Comparator<? super T> comparator) {
-        synchronized (lock) {
-            Collections.sort(objects, comparator);
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            if (reset)
+                return;
+            updates.onChanged(position, count, payload);
         }
-        notifyItemRangeChanged(0, getItemCount());
     }
 
-    @Override
-    public void onItemMove(int fromPosition, int toPosition) {
-        if (fromPosition < toPosition) {
-            for (int i = fromPosition; i < toPosition; i++) {
-                Collections.swap(objects, i, i + 1);
+    public void clear() {
+        final int size = getItemCount();
+        if (pagedSource != null || mappedSource != null) {
+            cancelRefresh();
+            synchronized (lock) {
+                replaceSource(new ArrayList<T>());
             }
-        } else {
-            for (int i = fromPosition; i > toPosition; i--) {
-                Collections.swap(objects, i, i - 1);
+            getUpdateCallback().onRemoved(0, size);
+            return;
+        }
+        synchronized (lock) {
+            objects.clear();
+            if (idIndex != null)
+                idIndex.clear();
+            idIndexValidTo = 0;
+            if (isLiveFiltered()) {
+                originalValues.clear();
+                dropSearchIndex();
+                visiblePositions = new VisiblePositions(new int[0],
+                        visiblePositions.hasSpans() ? new int[0][] : null, visiblePositions.isRanked());
             }
+            sourceReset();
         }
-        notifyItemMoved(fromPosition, toPosition);
+        cancelRefresh();
+        getUpdateCallback().onRemoved(0, size);
     }
 
-    @Override
-    public void onItemDismiss(int position) {
-        objects.remove(position);
-        notifyItemRemoved(position);
+    /**
+     * Save the items shown and the scroll position in a file, to restore them at the next start
+     * with {@link #restoreSnapshot(File, ItemSerializer)}. The items are copied under the lock, then
+     * written on the calling thread: it can be called from any thread, as long as the items are
+     * not paged or mapped. A paged list can only be read on the main thread and has placeholders
+     * for the pages not loaded, while a mapped list would be decoded entirely and is already in a
+     * file.
+     * @param file The file, it's replaced only when the new snapshot is complete
+     * @param serializer The serializer of the items
+     * @param anchorPosition The position of the first visible item
+     * @param anchorOffset The offset of the first visible item from the start of the list
+     * @throws IOException If the file can't be written
+     * @throws UnsupportedOperationException If the items are paged or mapped
+     */
+    public void saveSnapshot(@NonNull File file, @NonNull ItemSerializer<T> serializer, int anchorPosition,
+                             int anchorOffset) throws IOException {
+        final List<T> items;
+        synchronized (lock) {
+            if (pagedSource != null || mappedSource != null)
+                throw new UnsupportedOperationException("The items of a paged or mapped list can't be saved");
+            items = new ArrayList<>(objects);
+        }
+        AdapterSnapshot.write(file, items, serializer, anchorPosition, anchorOffset);
     }
 
-    @Override
-    public void onStartDrag(RecyclerView.ViewHolder viewHolder) {
-        if (dragListener != null)
-            dragListener.onStartDrag(viewHolder);
+    /**
+     * Show the items of a snapshot saved by {@link #saveSnapshot(File, ItemSerializer, int, int)}
+     * while the real data is loading. The snapshot is restored only if the adapter is empty,
+     * then the real data should be set with {@link #refresh(List)} or {@link #refreshAsync(List)}
+     * so that only the differences are notified. All the items are decoded on the calling
+     * thread, on the main thread large snapshots should be restored with
+     * {@link #restoreSnapshotAsync(File, ItemSerializer, AdapterSnapshot.Callback)}.
+     * @param file The file of the snapshot
+     * @param serializer The serializer of the items
+     * @return The snapshot, to restore the scroll position, or null if not restored because
+     * the adapter is not empty or the file is missing or not valid
+     * @throws UnsupportedOperationException If the items are paged or mapped
+     */
+    @Nullable
+    public AdapterSnapshot<T> restoreSnapshot(@NonNull File file, @NonNull ItemSerializer<T> serializer) {
+        checkMutable();
+        if (getItemCount() > 0)
+            return null;
+        final AdapterSnapshot<T> snapshot = AdapterSnapshot.read(file, serializer);
+        if (snapshot == null || getItemCount() > 0)
+            return null;
+        add(snapshot.getItems());
+        return snapshot;
     }
 
-    @Override
-    public final void onBindViewHolder(VH holder, int position) {
-        holder.bindViewHolder(position);
+    /**
+     * Like {@link #restoreSnapshot(File, ItemSerializer)} but the file is read and the items
+     * are decoded on a background thread, so the time to start doesn't grow with the size of
+     * the snapshot. The items are added on the main thread, only if the adapter is still empty.
+     * It must be called from the main thread and the serializer must be safe to be called
+     * from a background thread.
+     * @param file The file of the snapshot
+     * @param serializer The serializer of the items
+     * @param callback Called on the main thread with the snapshot, to restore the scroll position,
+     *                 or with null if not restored, also when a paged or mapped list is set meanwhile
+     * @throws UnsupportedOperationException If the items are paged or mapped
+     */
+    public void restoreSnapshotAsync(@NonNull final File file, @NonNull final ItemSerializer<T> serializer,
+                                     @NonNull final AdapterSnapshot.Callback<T> callback) {
+        checkMutable();
+        AdapterExecutors.background().execute(new Runnable() {
+            @Override
+            public void run() {
+                final AdapterSnapshot<T> snapshot = AdapterSnapshot.read(file, serializer);
+                AdapterExecutors.mainThread().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (snapshot == null || getItemCount() > 0 || pagedSource != null ||
+                                mappedSource != null) {
+                            callback.onSnapshotRestored(null);
+                            return;
+                        }
+                        add(snapshot.getItems());
+                        callback.onSnapshotRestored(snapshot);
+                    }
+                });
+            }
+        });
     }
 
-    @Override
-    public final void onBindViewHolder(@NonNull VH holder, int position, @NonNull List<Object> payloads) {
-        super.onBindViewHolder(holder, position, payloads);
-        holder.bindViewHolder(position);
+    /**
+     * Show a list loaded lazily in pages. Until a page is loaded, {@link #getItem(int)} returns
+     * null for its items and the view holders should show a placeholder. Items can be
+     * checked, the filter asks the loader to count and load the matching items.
+     * Methods adding, removing, moving or sorting items throw UnsupportedOperationException,
+     * so drag and swipe must not be enabled: the pages only cache what the loader returns.
+     * {@link #clear()} and {@link #refresh(List)} replace the paged list with a regular one.
+     * With stable ids, placeholders can't be checked and the bulk selections of
+     * {@link SmartRecycleView} skip them.
+     * @param list The paged list
+     */
+    public void setPagedList(@NonNull PagedList<T> list) {
+        cancelRefresh();
+        filterRequest.incrementAndGet();
+        synchronized (lock) {
+            if (objects instanceof PagedList)
+                ((PagedList<?>) objects).setCallback(null);
+            pagedSource = list;
+            mappedSource = null;
+            objects = list;
+            originalValues = null;
+            dropSearchIndex();
+            filterActive = false;
+            filterConstraint = null;
+            visiblePositions = null;
+            rebuildIdIndex();
+        }
+        list.setCallback(pageCallback);
+        notifyReset();
     }
 
-    @Override
-    public Filter getFilter() {
-        if (filter == null) {
-            filter = new ArrayFilter();
-        }
-        return filter;
+    /**
+     * @return True if the items are loaded in pages, see {@link #setPagedList(PagedList)}
+     */
+    public boolean isPaged() {
+        return pagedSource != null;
     }
 
     /**
-     * <p>An array filter constrains the content of the array adapter with
-     * a prefix. Each item that does not start with the supplied prefix
-     * is removed from the list.</p>
+     * Show the records of a memory mapped file without copying them, they are decoded only
+     * when bound or filtered. The filter scans the records in parallel without keeping their
+     * texts in memory. The list is read only: methods adding, removing, moving or sorting items
+     * throw UnsupportedOperationException, {@link #clear()} and {@link #refresh(List)} replace it
+     * with a regular list.
+     * @param list The mapped list
      */
-    protected class ArrayFilter extends Filter {
-        @Override
-        protected FilterResults performFiltering(CharSequence prefix) {
-            final FilterResults results = new FilterResults();
+    public void setMappedList(@NonNull MappedRecordList<T> list) {
+        cancelRefresh();
+        filterRequest.incrementAndGet();
+        synchronized (lock) {
+            if (objects instanceof PagedList)
+                ((PagedList<?>) objects).setCallback(null);
+            pagedSource = null;
+            mappedSource = list;
+            objects = list;
+            originalValues = null;
+            dropSearchIndex();
+            filterActive = false;
+            filterConstraint = null;
+            visiblePositions = null;
+            rebuildIdIndex();
+        }
+        notifyReset();
+    }
 
-            if (originalValues == null) {
-                synchronized (lock) {
-                    originalValues = new ArrayList<>(objects);
-                }
-            }
+    /**
+     * @return True if the items are memory mapped, see {@link #setMappedList(MappedRecordList)}
+     */
+    public boolean isMapped() {
+        return mappedSource != null;
+    }
 
-            if (prefix == null || prefix.length() == 0) {
-                final ArrayList<T> list;
-                synchronized (lock) {
-                    list = new ArrayList<>(originalValues);
-                }
-                results.values = list;
-                results.count = list.size();
-            } else {
-                final String prefixString = prefix.toString().toLowerCase();
+    /**
+     * Check that items can be added, removed, moved or sorted. The pages of a paged list only
+     * cache what the loader returns, so a change would be lost when its page is evicted or
+     * loaded again. A mapped list is read only.
+     */
+    private void checkMutable() {
+        if (pagedSource != null)
+            throw new UnsupportedOperationException("Items of a paged list can't be added, removed, moved or sorted");
+        if (mappedSource != null)
+            throw new UnsupportedOperationException("The items of a mapped list can't be modified");
+    }
 
-                final ArrayList<T> values;
-                synchronized (lock) {
-                    values = new ArrayList<>(originalValues);
-                }
+    /**
+     * Replace a paged or mapped list with a regular one. Must be called with the lock held.
+     */
+    private void replaceSource(List<T> items) {
+        if (objects instanceof PagedList)
+            ((PagedList<?>) objects).setCallback(null);
+        pagedSource = null;
+        mappedSource = null;
+        objects = items;
+        originalValues = null;
+        dropSearchIndex();
+        filterActive = false;
+        filterConstraint = null;
+        visiblePositions = null;
+        rebuildIdIndex();
+    }
 
-                final int count = values.size();
-                final ArrayList<T> newValues = new ArrayList<>();
-
-                for (int i = 0; i < count; i++) {
-                    final T value = values.get(i);
-                    final String valueText = value.toString().toLowerCase();
-                    // First match against the whole, non-splitted value
-                    if (valueText.startsWith(prefixString)) {
-                        newValues.add(value);
-                    } else {
-                        final String[] words = valueText.split(" ");
-                        for (String word : words) {
-                            if (word.startsWith(prefixString)) {
-                                newValues.add(value);
-                                break;
-                            }
-                        }
-                    }
-                }
-                results.values = newValues;
-                results.count = newValues.size();
+    /**
+     * Utility method to reload a new dataset. It checks if items are new
+     * or modified or deleted to update the views. To define custom criteria,
+     * override {@see getDiffUtils} and extend DiffCallback class.
+     * The common head and tail of the two lists are skipped, only the changed
+     * window in the middle is processed by {@link DiffUtil}.
+     * While a filter is active, the new dataset replaces the unfiltered items and only
+     * the items matching the constraint are shown.
+     * A {@link MappedRecordList} is shown with {@link #setMappedList(MappedRecordList)} instead of being copied.
+     * @param collection The new dataset
+     */
+    public void refresh(List<T> collection) {
+        if (collection instanceof MappedRecordList) {
+            setMappedList((MappedRecordList<T>) collection);
+            return;
+        }
+        cancelRefresh();
+        if (pagedSource != null || mappedSource != null) {
+            // Diffing would load all the pages or decode all the records
+            synchronized (lock) {
+                replaceSource(new ArrayList<>(collection));
             }
-            return results;
+            notifyReset();
+            return;
         }
+        final RefreshTask task = newRefreshTask(collection);
+        task.calculate();
+        applyRefresh(task);
+    }
 
-        @Override
-        protected void publishResults(CharSequence constraint, FilterResults results) {
-            //noinspection unchecked
-            objects = (List<T>) results.values;
-            notifyDataSetChanged();
+    /**
+     * Like {@link #refresh(List)} but the diff is calculated on a background executor
+     * and the result is dispatched on the main thread. If a diff is already running,
+     * the new dataset is queued and only the latest one queued is processed when the
+     * running diff completes. A diff whose dataset has been superseded by a newer
+     * refresh or by any other change of the adapter is never applied.
+     * It must be called from the main thread and {@link #getDiffUtil(List, List)}
+     * must be safe to be called from a background thread.
+     * While a filter is active, the new dataset is filtered on the executor as well.
+     * If calculating the diff throws, the refresh is dropped and the exception is reported
+     * to the {@link RefreshErrorListener} or logged if none is set.
+     * @param collection The new dataset
+     */
+    public void refreshAsync(List<T> collection) {
+        if (collection instanceof MappedRecordList) {
+            setMappedList((MappedRecordList<T>) collection);
+            return;
         }
+        refreshGeneration++;
+        if (runningRefresh != null) {
+            pendingRefresh = collection;
+            return;
+        }
+        startRefresh(collection);
     }
 
     /**
-     * Very basic class to use as diffutil callback. It just uses
-     * the method equals to compare objects (both id and contents).
+     * Set the executor used by {@link #refreshAsync(List)}. By default a shared
+     * background thread is used.
+     * @param executor The executor, null to use the default one
      */
-    protected class DiffCallback extends DiffUtil.Callback {
+    public void setDiffExecutor(@Nullable Executor executor) {
+        diffExecutor = executor;
+    }
 
-        protected final List<T> mOldList;
-        protected final List<T> mNewList;
+    /**
+     * Set the listener notified when the diff of {@link #refreshAsync(List)} fails
+     * @param listener The listener, null to just log the failures
+     */
+    public void setRefreshErrorListener(@Nullable RefreshErrorListener<T> listener) {
+        refreshErrorListener = listener;
+    }
 
-        public DiffCallback(List<T> oldCollection, List<T> collection) {
-            this.mOldList = oldCollection;
-            this.mNewList = collection;
+    /**
+     * @return True if an asynchronous refresh is running or queued
+     */
+    public boolean isRefreshing() {
+        return runningRefresh != null || pendingRefresh != null;
+    }
+
+    private void startRefresh(List<T> collection) {
+        if (pagedSource != null || mappedSource != null) {
+            // Nothing to diff, the paged or mapped list is replaced
+            refresh(collection);
+            return;
         }
+        final RefreshTask task = newRefreshTask(collection);
+        runningRefresh = task;
+        pendingRefresh = null;
+        final Executor executor = diffExecutor != null ? diffExecutor : AdapterExecutors.background();
+        executor.execute(task);
+    }
 
-        @Override
-        public int getOldListSize() {
-            return mOldList.size();
+    private void onRefreshCompleted(RefreshTask task) {
+        if (runningRefresh != task)
+            return;
+        runningRefresh = null;
+        if (task.error != null) {
+            // The refresh is dropped and the current items are kept, a queued one still starts
+            if (pendingRefresh != null)
+                startRefresh(pendingRefresh);
+            if (refreshErrorListener != null)
+                refreshErrorListener.onRefreshFailed(task.newList, task.error);
+            else
+                Log.e(TAG, "Refresh failed", task.error);
+            return;
+        }
+        if (task.generation == refreshGeneration) {
+            applyRefresh(task);
+        } else if (pendingRefresh == null && !task.cancelled) {
+            // The adapter changed while the diff was running, calculate it again
+            pendingRefresh = task.newList;
         }
+        if (pendingRefresh != null) {
+            startRefresh(pendingRefresh);
+        }
+    }
 
-        @Override
-        public int getNewListSize() {
-            return mNewList.size();
+    /**
+     * Prepare the refresh of the current items with a new dataset. The old items are copied
+     * because the change payloads are calculated during the dispatch, when {@link #objects}
+     * already contains the new items.
+     */
+    @NonNull
+    private RefreshTask newRefreshTask(List<T> collection) {
+        final List<T> oldList;
+        final String constraint;
+        synchronized (lock) {
+            oldList = new ArrayList<>(objects);
+            constraint = isLiveFiltered() ? filterConstraint : null;
         }
+        return new RefreshTask(refreshGeneration, oldList, new ArrayList<>(collection), constraint, detectMoves);
+    }
 
-        @Override
-        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-            return mOldList.get(oldItemPosition).equals(mNewList.get(
-                    newItemPosition).toString());
+    /**
+     * Replace the items with the ones of a calculated refresh and notify the differences.
+     * The refresh must not be stale.
+     */
+    private void applyRefresh(RefreshTask task) {
+        synchronized (lock) {
+            if (task.constraint != null) {
+                originalValues = task.newList;
+                dropSearchIndex();
+                searchIndex = task.index;
+                setVisible(task.shown, task.matches);
+            } else {
+                objects.clear();
+                objects.addAll(task.newList);
+                rebuildIdIndex();
+                sourceReset();
+            }
         }
+        task.result.dispatchUpdatesTo(getUpdateCallback());
+    }
 
-        @Override
-        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-            return areItemsTheSame(oldItemPosition, newItemPosition);
+    /**
+     * Called when the dataset is modified outside the refresh methods. A running diff
+     * becomes stale and it will be calculated again against the new content.
+     */
+    private void invalidateRefresh() {
+        refreshGeneration++;
+        dataVersion++;
+    }
+
+    /**
+     * Called when the whole dataset is replaced synchronously. Running and queued
+     * asynchronous refreshes are discarded.
+     */
+    private void cancelRefresh() {
+        refreshGeneration++;
+        dataVersion++;
+        pendingRefresh = null;
+        if (runningRefresh != null)
+            runningRefresh.cancelled = true;
+    }
+
+    /**
+     * Set the provider of the item keys. When set, the items are compared by key and
+     * content hash during a refresh and the key is returned as item id. To use the keys as
+     * stable ids, call {@link #setHasStableIds(boolean)} as well, before the adapter is attached
+     * to a recycler view.
+     * @param provider The key provider or null to compare the items with equals
+     */
+    public void setItemKeyProvider(@Nullable ItemKeyProvider<T> provider) {
+        itemKeyProvider = provider;
+        synchronized (lock) {
+            rebuildIdIndex();
+        }
+    }
+
+    /**
+     * Enable an index from item key to position. It requires an item key provider,
+     * it's updated by all the methods modifying the dataset and it makes lookups by
+     * item or by id O(1). An insertion or a removal shifts the positions of the following
+     * items lazily, without visiting them. It's also used by {@link SmartRecycleView} to find
+     * the checked items after a change of the dataset.
+     * If the subclasses modify {@link #objects} directly, the index is rebuilt when a
+     * lookup finds a stale position.
+     * @param enabled True to enable the index
+     */
+    public void setIdIndexEnabled(boolean enabled) {
+        idIndexEnabled = enabled;
+        synchronized (lock) {
+            rebuildIdIndex();
+        }
+    }
+
+    /**
+     * @return True if the lookups by id are served by the index
+     */
+    public boolean hasIdIndex() {
+        return idIndex != null;
+    }
+
+    /**
+     * Return the position of the item with the given id
+     * @param id The id
+     * @return The position or {@link RecyclerView#NO_POSITION} if not found
+     */
+    public int getPositionForId(final long id) {
+        synchronized (lock) {
+            if (idIndex != null) {
+                int position = idIndex.get(id);
+                if (position != RecyclerView.NO_POSITION ? position < idIndexValidTo && isIndexed(position, id) :
+                        idIndexValidTo == objects.size())
+                    return position;
+                if (idIndexValidTo < objects.size()) {
+                    indexRange(idIndexValidTo, objects.size());
+                    position = idIndex.get(id);
+                    if (isIndexed(position, id))
+                        return position;
+                }
+                rebuildIdIndex();
+                return idIndex != null ? idIndex.get(id) : RecyclerView.NO_POSITION;
+            }
+        }
+        if (objects instanceof PagedList) {
+            if (itemKeyProvider == null)
+                return id >= 0 && id < getItemCount() ? (int) id : RecyclerView.NO_POSITION;
+            // Only the loaded items can be found
+            final int position = ((PagedList<T>) objects).findLoaded(itemKeyProvider, id);
+            return position >= 0 ? position : RecyclerView.NO_POSITION;
+        }
+        for (int i = 0; i < getItemCount(); i++) {
+            if (getItemId(i) == id)
+                return i;
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    private boolean isIndexed(int position, long id) {
+        if (position == RecyclerView.NO_POSITION)
+            return true;
+        if (position >= objects.size())
+            return false;
+        final T item = objects.get(position);
+        return item != null && itemKeyProvider.getKey(item) == id;
+    }
+
+    /**
+     * Must be called with the lock held
+     */
+    private void rebuildIdIndex() {
+        if (!idIndexEnabled || itemKeyProvider == null || objects instanceof PagedList ||
+                objects instanceof MappedRecordList) {
+            // A paged or mapped list can't be indexed without loading or decoding all the items
+            idIndex = null;
+            return;
+        }
+        idIndex = new IdPositionIndex(objects.size());
+        idIndexValidTo = 0;
+        indexRange(0, objects.size());
+    }
+
+    /**
+     * Update the index for the positions in [from, to). Nothing to do if the positions
+     * from the start of the range are already stale. Must be called with the lock held.
+     */
+    private void indexRange(int from, int to) {
+        if (idIndex == null || from > idIndexValidTo)
+            return;
+        for (int i = from; i < to; i++) {
+            final T item = objects.get(i);
+            if (item != null)
+                idIndex.put(itemKeyProvider.getKey(item), i);
+        }
+        idIndexValidTo = Math.max(idIndexValidTo, to);
+    }
+
+    /**
+     * Mark the positions in the index as stale from the given one, after the following
+     * items have been reordered. Must be called with the lock held.
+     */
+    private void invalidateIdIndex(int from) {
+        idIndexValidTo = Math.min(idIndexValidTo, from);
+    }
+
+    /**
+     * Shift the indexed positions after an insertion and index the inserted items.
+     * Must be called with the lock held.
+     */
+    private void indexInserted(int position, int count) {
+        if (idIndex == null || position > idIndexValidTo)
+            return;
+        idIndex.shiftInserted(position, count);
+        idIndexValidTo += count;
+        indexRange(position, position + count);
+    }
+
+    /**
+     * Shift the indexed positions after a removal, the removed items must be unindexed first.
+     * Must be called with the lock held.
+     */
+    private void indexRemoved(int position, int count) {
+        if (idIndex == null || position >= idIndexValidTo)
+            return;
+        idIndex.shiftRemoved(position, count);
+        idIndexValidTo = Math.max(position, idIndexValidTo - count);
+    }
+
+    /**
+     * Remove from the index an item removed at the given position. Must be called with the lock held.
+     */
+    private void unindex(T item, int position) {
+        if (idIndex == null || item == null)
+            return;
+        final long key = itemKeyProvider.getKey(item);
+        final int indexed = idIndex.get(key);
+        // A stale position may be the one of the removed item
+        if (indexed == position || indexed >= idIndexValidTo)
+            idIndex.remove(key);
+    }
+
+    @Nullable
+    public ItemKeyProvider<T> getItemKeyProvider() {
+        return itemKeyProvider;
+    }
+
+    /**
+     * Enable or disable the detection of moved items during a refresh. Disabling it makes
+     * the diff of very large lists much cheaper, moved items are then notified as removed
+     * and inserted. Default is enabled.
+     * @param detectMoves True to detect moves
+     */
+    public void setDetectMoves(boolean detectMoves) {
+        this.detectMoves = detectMoves;
+    }
+
+    /**
+     * By default it returns a DiffCallback class. Override if needed.
+     * @param objects The old list
+     * @param collection The new list
+     * @return A DiffUtil.Callback object
+     */
+    protected DiffUtil.Callback getDiffUtil(List<T> objects, List<T> collection) {
+        return new DiffCallback(objects, collection);
+    }
+
+    /**
+     * Called during a refresh for items with the same identity but different contents.
+     * Override to return a payload describing the changed fields, it will be delivered
+     * to {@link BaseViewHolder#onBind(int, List)} so that only the affected views are updated.
+     * It can be called from a background thread.
+     * @param oldItem The old item
+     * @param newItem The new item
+     * @return The payload or null to perform a full bind
+     */
+    @Nullable
+    protected Object getChangePayload(T oldItem, T newItem) {
+        return null;
+    }
+
+    @Override
+    public int getItemCount() {
+        return objects.size();
+    }
+
+    public T getItem(final int position) {
+        return objects.get(position);
+    }
+
+    public long getItemId(final int position) {
+        if (itemKeyProvider != null) {
+            final T item = getItem(position);
+            // Placeholders of paged lists have no id
+            return item != null ? itemKeyProvider.getKey(item) : RecyclerView.NO_ID;
+        }
+        return position;
+    }
+
+    /**
+     * Return false for an item of a paged list not loaded yet: its id is not known and reading
+     * it would start loading its page
+     * @param position The position of the item
+     */
+    boolean isItemIdKnown(int position) {
+        final List<T> items = objects;
+        return itemKeyProvider == null || !(items instanceof PagedList) || ((PagedList<T>) items).isLoaded(position);
+    }
+
+    public int getPosition(final T item) {
+        if (idIndex != null && item != null) {
+            final int position = getPositionForId(itemKeyProvider.getKey(item));
+            if (position != RecyclerView.NO_POSITION && item.equals(objects.get(position)))
+                return position;
+        }
+        return objects.indexOf(item);
+    }
+
+    /**
+     * Insert an item at the given position. While a filter is active, the item is inserted
+     * in the unfiltered items before the item shown at that position and it's shown only
+     * if it matches the constraint. When the results are ranked, it's placed by score.
+     * @param object The item
+     * @param index The position
+     */
+    public void insert(final T object, int index) {
+        checkMutable();
+        if (isLiveFiltered()) {
+            final ListUpdateRecorder updates = new ListUpdateRecorder();
+            synchronized (lock) {
+                final int sourcePosition;
+                if (index < objects.size())
+                    sourcePosition = visiblePositions.get(index);
+                else if (!objects.isEmpty())
+                    sourcePosition = visiblePositions.get(objects.size() - 1) + 1;
+                else
+                    sourcePosition = originalValues.size();
+                liveInserted(sourcePosition, object, updates);
+            }
+            invalidateRefresh();
+            updates.dispatchTo(getUpdateCallback());
+            return;
+        }
+        synchronized (lock) {
+            objects.add(index, object);
+            indexInserted(index, 1);
+            sourceInserted(index, object);
+        }
+        invalidateRefresh();
+        getUpdateCallback().onInserted(index, 1);
+    }
+
+    /**
+     * Remove an item. While a filter is active, it's removed from the unfiltered items
+     * even if it's not shown.
+     * @param object The item
+     */
+    public void remove(T object) {
+        checkMutable();
+        final int position = getPosition(object);
+        if (position < 0) {
+            if (isLiveFiltered()) {
+                synchronized (lock) {
+                    final int sourcePosition = originalValues.indexOf(object);
+                    if (sourcePosition < 0)
+                        return;
+                    removeSource(sourcePosition);
+                }
+                invalidateRefresh();
+            }
+            return;
+        }
+        synchronized (lock) {
+            if (isLiveFiltered()) {
+                liveRemoved(position);
+            } else {
+                unindex(objects.remove(position), position);
+                indexRemoved(position, 1);
+                sourceRemoved(position);
+            }
+        }
+        invalidateRefresh();
+        getUpdateCallback().onRemoved(position, 1);
+    }
+
+    public void sort(Comparator<? super T> comparator) {
+        checkMutable();
+        synchronized (lock) {
+            if (isLiveFiltered()) {
+                liveSorted(comparator);
+            } else {
+                Collections.sort(objects, comparator);
+                rebuildIdIndex();
+                sourceReset();
+            }
+        }
+        invalidateRefresh();
+        getUpdateCallback().onChanged(0, getItemCount(), null);
+    }
+
+    @Override
+    public void onItemMove(int fromPosition, int toPosition) {
+        checkMutable();
+        synchronized (lock) {
+            if (isLiveFiltered())
+                liveMoved(fromPosition, toPosition);
+            if (fromPosition < toPosition) {
+                for (int i = fromPosition; i < toPosition; i++) {
+                    Collections.swap(objects, i, i + 1);
+                }
+            } else {
+                for (int i = fromPosition; i > toPosition; i--) {
+                    Collections.swap(objects, i, i - 1);
+                }
+            }
+            indexRange(Math.min(fromPosition, toPosition), Math.max(fromPosition, toPosition) + 1);
+            sourceMoved(fromPosition, toPosition);
+        }
+        invalidateRefresh();
+        getUpdateCallback().onMoved(fromPosition, toPosition);
+    }
+
+    @Override
+    public void onItemDismiss(int position) {
+        checkMutable();
+        synchronized (lock) {
+            if (isLiveFiltered()) {
+                liveRemoved(position);
+            } else {
+                unindex(objects.remove(position), position);
+                indexRemoved(position, 1);
+                sourceRemoved(position);
+            }
+        }
+        invalidateRefresh();
+        getUpdateCallback().onRemoved(position, 1);
+    }
+
+    /**
+     * Return the text of the item used by the filter. By default it's the string
+     * returned by toString. On large datasets it's called from several threads at the same time.
+     * @param item The item
+     * @return The text to match
+     */
+    @NonNull
+    protected String getFilterText(T item) {
+        return item.toString();
+    }
+
+    /**
+     * Build a search index over the given items, the lock is not needed if the list
+     * is not modified meanwhile
+     */
+    @NonNull
+    private SearchIndex buildSearchIndex(final List<T> values) {
+        final String[] texts = new String[values.size()];
+        // Getting and normalizing the texts is the expensive part, it's done in parallel
+        getParallelScan().forEach(texts.length, new ParallelScan.Task() {
+            @Override
+            boolean process(int chunk, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    texts[i] = getFilterText(values.get(i)).toLowerCase();
+                }
+                return true;
+            }
+        });
+        return new SearchIndex(Arrays.asList(texts));
+    }
+
+    /**
+     * Return the search index to update after a change of {@link #originalValues}, copying it
+     * if a filtering is querying it. The copy shares the sorted tokens, only the changes not
+     * merged yet are duplicated. Must be called with the lock held.
+     * @return The index or null if not built
+     */
+    @Nullable
+    private SearchIndex editSearchIndex() {
+        sourceVersion++;
+        if (searchIndex != null && searchIndex.readers > 0)
+            searchIndex = searchIndex.copy();
+        return searchIndex;
+    }
+
+    /**
+     * Drop the search index after {@link #originalValues} is replaced. Must be called with the lock held.
+     */
+    private void dropSearchIndex() {
+        sourceVersion++;
+        searchIndex = null;
+    }
+
+    /**
+     * When the filter is not active, {@link #objects} and {@link #originalValues} contain
+     * the same items: changes are applied to both and to the search index.
+     * Must be called with the lock held.
+     */
+    private boolean isSourceMirrored() {
+        return originalValues != null && originalValues != objects && !filterActive;
+    }
+
+    private void sourceInserted(int position, T item) {
+        if (!isSourceMirrored())
+            return;
+        originalValues.add(position, item);
+        final SearchIndex index = editSearchIndex();
+        if (index != null)
+            index.insert(position, getFilterText(item).toLowerCase());
+    }
+
+    private void sourceRemoved(int position) {
+        if (!isSourceMirrored())
+            return;
+        originalValues.remove(position);
+        final SearchIndex index = editSearchIndex();
+        if (index != null)
+            index.remove(position);
+    }
+
+    private void sourceMoved(int fromPosition, int toPosition) {
+        if (!isSourceMirrored())
+            return;
+        originalValues.add(toPosition, originalValues.remove(fromPosition));
+        final SearchIndex index = editSearchIndex();
+        if (index != null)
+            index.move(fromPosition, toPosition);
+    }
+
+    private void sourceReset() {
+        if (!isSourceMirrored())
+            return;
+        originalValues.clear();
+        originalValues.addAll(objects);
+        dropSearchIndex();
+    }
+
+    /**
+     * While a filter is active, the unfiltered items are the source of truth: changes are applied
+     * to them and to the search index, then each change is matched against the constraint
+     * to update the shown items without filtering again. The new item is matched against its
+     * own text, and the shown positions are updated through {@link VisiblePositions}, which
+     * moves a single chunk of them. Appending a collection merges all the new items at once.
+     * Must be called with the lock held or on the main thread.
+     */
+    private boolean isLiveFiltered() {
+        return filterActive && visiblePositions != null;
+    }
+
+    /**
+     * Insert an item in the unfiltered items while a filter is active and show it if it
+     * matches the constraint. Must be called with the lock held.
+     */
+    private void liveInserted(int sourcePosition, T item, ListUpdateCallback callback) {
+        originalValues.add(sourcePosition, item);
+        final SearchIndex index = editSearchIndex();
+        if (index != null)
+            index.insert(sourcePosition, getFilterText(item).toLowerCase());
+        visiblePositions.shiftSource(sourcePosition, 1);
+        final MatchSpans spans = matcher != null ? new MatchSpans() : null;
+        final int score = matchSource(sourcePosition, spans);
+        if (score == Matcher.NO_MATCH)
+            return;
+        final int position;
+        if (visiblePositions.isRanked()) {
+            position = visiblePositions.rankedIndex(sourcePosition, score, scorer);
+            if (maxResults > 0 && position >= maxResults)
+                return;
+        } else {
+            position = visiblePositions.sortedIndex(sourcePosition);
+        }
+        objects.add(position, item);
+        indexInserted(position, 1);
+        visiblePositions.insert(position, sourcePosition, spans != null ? spans.toArray() : null);
+        callback.onInserted(position, 1);
+        if (visiblePositions.isRanked() && maxResults > 0 && objects.size() > maxResults) {
+            // The worst result is pushed out
+            removeVisible(objects.size() - 1);
+            callback.onRemoved(objects.size(), 1);
+        }
+    }
+
+    /**
+     * Append items to the unfiltered items while a filter is active and show the ones matching
+     * the constraint. The search index and the shown items are merged once with the new ones,
+     * so it's linear in the shown and in the new items instead of their product.
+     * Must be called with the lock held.
+     */
+    private void liveAppended(Collection<? extends T> collection, ListUpdateCallback callback) {
+        final int start = originalValues.size();
+        originalValues.addAll(collection);
+        final int end = originalValues.size();
+        final SearchIndex index = editSearchIndex();
+        if (index != null) {
+            final ArrayList<String> texts = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                texts.add(getFilterText(originalValues.get(i)).toLowerCase());
+            }
+            index.addAll(texts);
+        }
+        // The new items are the last ones, so the shown positions don't shift
+        final int[] added = new int[end - start];
+        final int[] addedScores = new int[added.length];
+        final int[][] addedSpans = visiblePositions.hasSpans() ? new int[added.length][] : null;
+        final MatchSpans spans = matcher != null ? new MatchSpans() : null;
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (spans != null)
+                spans.clear();
+            final int score = matchSource(i, spans);
+            if (score == Matcher.NO_MATCH)
+                continue;
+            added[count] = i;
+            addedScores[count] = score;
+            if (addedSpans != null)
+                addedSpans[count] = spans != null ? spans.toArray() : null;
+            count++;
+        }
+        if (count == 0)
+            return;
+        if (visiblePositions.isRanked()) {
+            mergeRanked(added, addedScores, addedSpans, count, callback);
+            return;
+        }
+        final int size = visiblePositions.size();
+        for (int i = 0; i < count; i++) {
+            visiblePositions.insert(size + i, added[i], addedSpans != null ? addedSpans[i] : null);
+            objects.add(originalValues.get(added[i]));
+        }
+        indexRange(size, size + count);
+        callback.onInserted(size, count);
+    }
+
+    /**
+     * Merge new results with the ranked ones, by score and then by position. The shown items
+     * before the place of the best new result are copied without being matched again.
+     * Must be called with the lock held.
+     * @param added The positions of the new results, in source order
+     * @param addedScores The scores of the new results
+     * @param addedSpans The match spans of the new results, null if not shown
+     * @param count The number of new results
+     */
+    private void mergeRanked(int[] added, int[] addedScores, @Nullable int[][] addedSpans, int count,
+                             ListUpdateCallback callback) {
+        final List<T> old = objects;
+        final int first = visiblePositions.mergeRanked(added, addedScores, addedSpans, count, maxResults, scorer,
+                callback);
+        if (first < 0)
+            return;
+        invalidateIdIndex(first);
+        // The tail is indexed again on the next lookup, without the results pushed out
+        for (int k = first; k < old.size(); k++) {
+            unindex(old.get(k), k);
+        }
+        final int size = visiblePositions.size();
+        final ArrayList<T> shown = new ArrayList<>(size);
+        shown.addAll(old.subList(0, first));
+        for (int n = first; n < size; n++) {
+            shown.add(originalValues.get(visiblePositions.get(n)));
+        }
+        objects = shown;
+    }
+
+    /**
+     * Remove a shown item from the unfiltered items while a filter is active.
+     * Must be called with the lock held.
+     */
+    private void liveRemoved(int position) {
+        final int sourcePosition = visiblePositions.get(position);
+        removeVisible(position);
+        removeSource(sourcePosition);
+    }
+
+    /**
+     * Remove an item from the unfiltered items while a filter is active, the item must not
+     * be shown. Must be called with the lock held.
+     */
+    private void removeSource(int sourcePosition) {
+        originalValues.remove(sourcePosition);
+        final SearchIndex index = editSearchIndex();
+        if (index != null)
+            index.remove(sourcePosition);
+        visiblePositions.shiftSource(sourcePosition + 1, -1);
+    }
+
+    /**
+     * Sort the unfiltered items while a filter is active. The same items are still matching,
+     * so the index and the shown items are only reordered. Must be called with the lock held.
+     */
+    private void liveSorted(final Comparator<? super T> comparator) {
+        final ArrayList<T> values = originalValues;
+        final int size = values.size();
+        final Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // Stable, like Collections.sort
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return comparator.compare(values.get(o1), values.get(o2));
+            }
+        });
+        final int[] newPositions = new int[size];
+        final ArrayList<T> sorted = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            newPositions[order[i]] = i;
+            sorted.add(values.get(order[i]));
+        }
+        values.clear();
+        values.addAll(sorted);
+        final SearchIndex index = editSearchIndex();
+        if (index != null)
+            index.permute(newPositions);
+
+        final int[] oldPositions = visiblePositions.toArray();
+        final int[][] oldSpans = visiblePositions.spansToArray();
+        final boolean ranked = visiblePositions.isRanked();
+        final int count = oldPositions.length;
+        final int[] positions = new int[count];
+        final Integer[] visibleOrder = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            positions[i] = newPositions[oldPositions[i]];
+            visibleOrder[i] = i;
+        }
+        // Ranked results keep their order by score, ties are ordered by the new positions
+        final int[] scores = new int[count];
+        if (ranked) {
+            for (int i = 0; i < count; i++) {
+                scores[i] = matchSource(positions[i], null);
+            }
+        }
+        Arrays.sort(visibleOrder, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                if (scores[o1] != scores[o2])
+                    return scores[o1] > scores[o2] ? -1 : 1;
+                return positions[o1] < positions[o2] ? -1 : (positions[o1] == positions[o2] ? 0 : 1);
+            }
+        });
+        final ArrayList<T> shown = new ArrayList<>(count);
+        final int[] shownPositions = new int[count];
+        final int[][] shownSpans = oldSpans != null ? new int[count][] : null;
+        for (int i = 0; i < count; i++) {
+            final int entry = visibleOrder[i];
+            shownPositions[i] = positions[entry];
+            shown.add(values.get(positions[entry]));
+            if (shownSpans != null)
+                shownSpans[i] = oldSpans[entry];
+        }
+        objects = shown;
+        visiblePositions = new VisiblePositions(shownPositions, shownSpans, ranked);
+        rebuildIdIndex();
+    }
+
+    /**
+     * Move a shown item in the unfiltered items while a filter is active. Only the
+     * shown positions are updated, not {@link #objects}. The relative order of the other
+     * items is unchanged, so positions in source order stay sorted. Ranked results keep
+     * the order chosen by the user instead, the items added later are then placed by score
+     * only approximately. Must be called with the lock held.
+     */
+    private void liveMoved(int fromPosition, int toPosition) {
+        final int from = visiblePositions.get(fromPosition);
+        final int to = visiblePositions.get(toPosition);
+        originalValues.add(to, originalValues.remove(from));
+        final SearchIndex index = editSearchIndex();
+        if (index != null)
+            index.move(from, to);
+        visiblePositions.move(fromPosition, toPosition, to);
+    }
+
+    /**
+     * Remove a shown item, without changing the unfiltered items. Must be called with the lock held.
+     */
+    private void removeVisible(int position) {
+        unindex(objects.remove(position), position);
+        indexRemoved(position, 1);
+        visiblePositions.remove(position);
+    }
+
+    /**
+     * Match an unfiltered item against the constraint of the active filter. The text is taken
+     * from the search index only if it's already built.
+     * Must be called with the lock held.
+     * @return The score or {@link Matcher#NO_MATCH}
+     */
+    private int matchSource(int sourcePosition, @Nullable MatchSpans spans) {
+        final String text = searchIndex != null ? searchIndex.getText(sourcePosition) :
+                getFilterText(originalValues.get(sourcePosition)).toLowerCase();
+        if (matcher != null)
+            return matcher.match(originalValues.get(sourcePosition), text, filterConstraint, spans);
+        return SearchIndex.matches(text, filterConstraint) ? 0 : Matcher.NO_MATCH;
+    }
+
+    /**
+     * Scores the shown items against the constraint of the active filter, with the lock held
+     */
+    private final VisiblePositions.Scorer scorer = new VisiblePositions.Scorer() {
+        @Override
+        public int score(int sourcePosition) {
+            return matchSource(sourcePosition, null);
+        }
+    };
+
+    /**
+     * Show the given items of the unfiltered list. Must be called with the lock held.
+     */
+    private void setVisible(List<T> values, Matches matches) {
+        objects = values;
+        visiblePositions = new VisiblePositions(matches.positions, matches.spans, matches.ranked);
+        rebuildIdIndex();
+    }
+
+    /**
+     * Find the items matching a constraint, with the index or with the matcher. The lock is
+     * not needed if the items and the index are not modified meanwhile.
+     * @param values The unfiltered items
+     * @param index The search index of the items, null to get the texts while scanning
+     * @param constraint The normalized constraint
+     * @param cancellation Checked while matching, null if it can't be cancelled
+     * @return The matches or null if cancelled
+     */
+    @Nullable
+    private Matches findMatches(final List<T> values, @Nullable final SearchIndex index, final String constraint,
+                                @Nullable ParallelScan.Cancellation cancellation) {
+        final Matches result = new Matches();
+        final Matcher<T> matcher = this.matcher;
+        if (matcher == null && index != null) {
+            // Match against the whole value and against each word
+            result.positions = index.query(constraint, getParallelScan(), cancellation);
+            return result.positions != null ? result : null;
+        }
+        if (matcher == null) {
+            result.positions = getParallelScan().scan(values.size(), new ParallelScan.Predicate() {
+                @Override
+                public boolean matches(int position) {
+                    return SearchIndex.matches(getFilterText(values.get(position)).toLowerCase(), constraint);
+                }
+            }, cancellation);
+            return result.positions != null ? result : null;
+        }
+        final int[] scores = new int[values.size()];
+        int[] matches = getParallelScan().scan(values.size(), new ParallelScan.Predicate() {
+            @Override
+            public boolean matches(int position) {
+                final T item = values.get(position);
+                final String text = index != null ? index.getText(position) : getFilterText(item).toLowerCase();
+                scores[position] = matcher.match(item, text, constraint, null);
+                return scores[position] != Matcher.NO_MATCH;
+            }
+        }, cancellation);
+        if (matches == null)
+            return null;
+        if (maxResults > 0) {
+            matches = TopK.select(matches, scores, maxResults);
+            result.ranked = true;
+        }
+        // Spans are calculated only for the results
+        final MatchSpans spans = new MatchSpans();
+        result.spans = new int[matches.length][];
+        for (int i = 0; i < matches.length; i++) {
+            spans.clear();
+            final T item = values.get(matches[i]);
+            matcher.match(item, index != null ? index.getText(matches[i]) : getFilterText(item).toLowerCase(),
+                    constraint, spans);
+            result.spans[i] = spans.toArray();
+        }
+        result.positions = matches;
+        return result;
+    }
+
+    /**
+     * Unfiltered items matching a constraint
+     */
+    private static final class Matches {
+        int[] positions;
+        @Nullable
+        int[][] spans;
+        /**
+         * True if the positions are ordered by score instead of by position
+         */
+        boolean ranked;
+
+        <T> ArrayList<T> getValues(List<T> source) {
+            final ArrayList<T> values = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                values.add(source.get(position));
+            }
+            return values;
+        }
+    }
+
+    @Override
+    public void onStartDrag(RecyclerView.ViewHolder viewHolder) {
+        if (dragListener != null)
+            dragListener.onStartDrag(viewHolder);
+    }
+
+    /**
+     * Create a view holder of the given view type, like
+     * {@link RecyclerView.Adapter#onCreateViewHolder(ViewGroup, int)}, which calls it measuring
+     * the creation when the view type metrics are enabled
+     * @param parent The group the view will be added to once bound
+     * @param viewType The view type of the new view
+     * @return The view holder
+     */
+    @NonNull
+    protected abstract VH createItemViewHolder(@NonNull ViewGroup parent, int viewType);
+
+    @NonNull
+    @Override
+    public final VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (viewTypeMetrics == null)
+            return createItemViewHolder(parent, viewType);
+        final ViewTypeMetrics metrics = getMetrics(viewType);
+        if (bindTraceEnabled)
+            TraceCompat.beginSection(metrics.createSectionName);
+        final long start = System.nanoTime();
+        final VH holder;
+        try {
+            holder = createItemViewHolder(parent, viewType);
+        } finally {
+            if (bindTraceEnabled)
+                TraceCompat.endSection();
+        }
+        if (viewTypeMetricsEnabled)
+            metrics.recordCreate(System.nanoTime() - start);
+        return holder;
+    }
+
+    @Override
+    public final void onBindViewHolder(VH holder, int position) {
+        holder.setBoundAdapter(this);
+        if (viewTypeMetrics == null)
+            holder.bindViewHolder(position);
+        else
+            bindMeasured(holder, position, null);
+    }
+
+    @Override
+    public final void onBindViewHolder(@NonNull VH holder, int position, @NonNull List<Object> payloads) {
+        holder.setBoundAdapter(this);
+        if (viewTypeMetrics == null)
+            holder.bindViewHolder(position, payloads);
+        else
+            bindMeasured(holder, position, payloads);
+    }
+
+    private void bindMeasured(VH holder, int position, @Nullable List<Object> payloads) {
+        final ViewTypeMetrics metrics = getMetrics(holder.getItemViewType());
+        if (bindTraceEnabled)
+            TraceCompat.beginSection(metrics.bindSectionName);
+        final long start = System.nanoTime();
+        try {
+            if (payloads == null)
+                holder.bindViewHolder(position);
+            else
+                holder.bindViewHolder(position, payloads);
+        } finally {
+            if (bindTraceEnabled)
+                TraceCompat.endSection();
+        }
+        final long time = System.nanoTime() - start;
+        if (!viewTypeMetricsEnabled)
+            return;
+        boolean selectionOnly = payloads != null && !payloads.isEmpty();
+        if (selectionOnly) {
+            for (int i = 0; i < payloads.size(); i++) {
+                if (payloads.get(i) != BaseViewHolder.PAYLOAD_CHECKED_STATE) {
+                    selectionOnly = false;
+                    break;
+                }
+            }
+        }
+        metrics.recordBind(time, selectionOnly, payloads != null && !payloads.isEmpty());
+    }
+
+    @NonNull
+    private ViewTypeMetrics getMetrics(int viewType) {
+        ViewTypeMetrics metrics = viewTypeMetrics.get(viewType);
+        if (metrics == null) {
+            metrics = new ViewTypeMetrics(viewType);
+            viewTypeMetrics.put(viewType, metrics);
+        }
+        return metrics;
+    }
+
+    /**
+     * Enable the counters of created and bound view holders of each view type, see
+     * {@link #getViewTypeMetrics()}. They cost two reads of the clock for each creation and bind.
+     * @param enabled True to enable the counters
+     */
+    public void setViewTypeMetricsEnabled(boolean enabled) {
+        viewTypeMetricsEnabled = enabled;
+        updateViewTypeMetrics();
+    }
+
+    /**
+     * Wrap each creation and bind in a trace section named RecyclerArrayAdapter:create:&lt;view type&gt;
+     * and RecyclerArrayAdapter:bind:&lt;view type&gt;
+     * @param enabled True to enable the sections
+     */
+    public void setBindTraceEnabled(boolean enabled) {
+        bindTraceEnabled = enabled;
+        updateViewTypeMetrics();
+    }
+
+    private void updateViewTypeMetrics() {
+        if (!viewTypeMetricsEnabled && !bindTraceEnabled)
+            viewTypeMetrics = null;
+        else if (viewTypeMetrics == null)
+            viewTypeMetrics = new SparseArray<>();
+    }
+
+    /**
+     * @return A snapshot of the counters of each view type, empty if not enabled
+     */
+    @NonNull
+    public List<ViewTypeMetrics> getViewTypeMetrics() {
+        final SparseArray<ViewTypeMetrics> metrics = viewTypeMetrics;
+        final List<ViewTypeMetrics> result = new ArrayList<>();
+        if (metrics == null || !viewTypeMetricsEnabled)
+            return result;
+        for (int i = 0; i < metrics.size(); i++) {
+            result.add(metrics.valueAt(i).copy());
+        }
+        return result;
+    }
+
+    public void resetViewTypeMetrics() {
+        if (viewTypeMetrics != null)
+            viewTypeMetrics.clear();
+    }
+
+    /**
+     * Inflate the item view of a view holder in {@link #createItemViewHolder(ViewGroup, int)}.
+     * When the view type metrics are enabled, the time spent inflating is measured.
+     * @param parent The parent passed to createItemViewHolder
+     * @param layoutId The layout to inflate
+     * @param viewType The view type passed to createItemViewHolder
+     * @return The view
+     */
+    @NonNull
+    protected View inflateItemView(@NonNull ViewGroup parent, @LayoutRes int layoutId, int viewType) {
+        final LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        if (!viewTypeMetricsEnabled || viewTypeMetrics == null)
+            return inflater.inflate(layoutId, parent, false);
+        final long start = System.nanoTime();
+        final View view = inflater.inflate(layoutId, parent, false);
+        getMetrics(viewType).recordInflate(System.nanoTime() - start);
+        return view;
+    }
+
+    /**
+     * Filter the adapter with the given constraint. Unlike calling getFilter().filter()
+     * directly, a filtering still running for a previous constraint stops as soon as possible
+     * and, if a debounce delay is set, the filtering starts only when no other call arrives
+     * within the delay. It must be called from the main thread.
+     * @param constraint The constraint
+     */
+    public void filter(@Nullable CharSequence constraint) {
+        filterRequest.incrementAndGet();
+        if (pendingFilter != null) {
+            AdapterExecutors.mainThread().removeCallbacks(pendingFilter);
+            pendingFilter = null;
+            droppedQueries.incrementAndGet();
+        }
+        if (filterDebounceMillis <= 0) {
+            getFilter().filter(constraint);
+            return;
+        }
+        // The text of an editable can change while waiting
+        final String text = constraint != null ? constraint.toString() : null;
+        pendingFilter = new Runnable() {
+            @Override
+            public void run() {
+                pendingFilter = null;
+                getFilter().filter(text);
+            }
+        };
+        AdapterExecutors.mainThread().postDelayed(pendingFilter, filterDebounceMillis);
+    }
+
+    /**
+     * Set the delay used by {@link #filter(CharSequence)} to wait for the next constraint,
+     * typically while the user is typing. Default is 0, the filtering starts immediately.
+     * @param millis The delay in milliseconds
+     */
+    public void setFilterDebounce(long millis) {
+        filterDebounceMillis = millis;
+    }
+
+    /**
+     * Set a listener receiving the measures of every published filter query
+     * @param listener The listener or null to remove it
+     */
+    public void setFilterMetricsListener(@Nullable FilterMetrics.Listener listener) {
+        filterMetricsListener = listener;
+    }
+
+    /**
+     * Set the executor used to split long filtering scans in parallel chunks. By default
+     * a pool with one thread per CPU is used.
+     * @param executor The executor or null to use the default one
+     */
+    public void setFilterExecutor(@Nullable Executor executor) {
+        filterExecutor = executor;
+    }
+
+    /**
+     * Set the number of items above which filtering scans run in parallel. Below
+     * it, the filter runs sequentially on the filter thread.
+     * Default is {@link #DEFAULT_PARALLEL_FILTER_THRESHOLD}.
+     * @param threshold The threshold, Integer.MAX_VALUE to always run sequentially
+     */
+    public void setParallelFilterThreshold(int threshold) {
+        parallelFilterThreshold = threshold;
+    }
+
+    /**
+     * Set the matcher used by the filter. When not set, the filter matches the items
+     * starting with the constraint or containing a word starting with it, using an index.
+     * With a matcher, every item is checked at each filtering, in parallel for large datasets.
+     * @param matcher The matcher, for example a {@link FuzzyMatcher}, or null for the default
+     */
+    public void setMatcher(@Nullable Matcher<T> matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * Limit the number of results of a matcher. When set, only the best results are shown,
+     * ordered by score. Otherwise all the matching items are shown in their original order.
+     * @param maxResults The maximum number of results, 0 for no limit
+     */
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Return the ranges of the filter text of an item matched by the current matcher
+     * @param position The position of the item
+     * @return Pairs of start and end offsets or null if not available
+     */
+    @Nullable
+    public int[] getMatchSpans(int position) {
+        synchronized (lock) {
+            final VisiblePositions visible = visiblePositions;
+            return visible != null && position >= 0 && position < visible.size() ? visible.getSpans(position) : null;
+        }
+    }
+
+    @NonNull
+    private ParallelScan getParallelScan() {
+        return new ParallelScan(filterExecutor != null ? filterExecutor : AdapterExecutors.parallel(),
+                parallelFilterThreshold, AdapterExecutors.parallelism());
+    }
+
+    @Override
+    public Filter getFilter() {
+        if (filter == null) {
+            filter = new ArrayFilter();
+        }
+        return filter;
+    }
+
+    /**
+     * <p>An array filter constrains the content of the array adapter with
+     * a prefix. Each item that does not start with the supplied prefix
+     * is removed from the list.</p>
+     * <p>The matching items are looked up in a search index of the normalized
+     * words of the items, built on the first filtering and then kept up to date
+     * by the methods modifying the adapter.</p>
+     */
+    protected class ArrayFilter extends Filter {
+        @Override
+        protected FilterResults performFiltering(CharSequence prefix) {
+            // getFilter().filter() doesn't go through filter(CharSequence): the request is
+            // counted here, so that a newer filtering stops this one whatever the entry point
+            return performFiltering(prefix, filterRequest.incrementAndGet());
+        }
+
+        @Nullable
+        private ArrayFilterResults performFiltering(CharSequence prefix, final int request) {
+            final long start = System.nanoTime();
+            final ParallelScan.Cancellation cancellation = new ParallelScan.Cancellation() {
+                @Override
+                public boolean isCancelled() {
+                    return filterRequest.get() != request;
+                }
+            };
+            final ArrayFilterResults results = new ArrayFilterResults();
+            results.request = request;
+            final int[] oldPositions;
+            final int[][] oldSpans;
+            final boolean oldRanked;
+            final int sourceSize;
+
+            final PagedList<T> paged;
+            synchronized (lock) {
+                paged = pagedSource;
+            }
+            if (paged != null) {
+                // The loader does the filtering
+                final PagedList<T> list = prefix == null || prefix.length() == 0 ? paged :
+                        paged.withConstraint(prefix.toString().toLowerCase());
+                if (filterRequest.get() != request) {
+                    droppedQueries.incrementAndGet();
+                    return null;
+                }
+                results.values = list;
+                results.count = list.size();
+                results.scanTimeNanos = System.nanoTime() - start;
+                return results;
+            }
+            final boolean constrained = prefix != null && prefix.length() > 0;
+            final Matcher<T> matcher;
+            final List<T> values;
+            final boolean mapped;
+            SearchIndex index;
+            synchronized (lock) {
+                mapped = mappedSource != null;
+                if (originalValues == null && !mapped) {
+                    originalValues = new ArrayList<>(objects);
+                }
+                results.version = dataVersion;
+                results.sourceVersion = sourceVersion;
+                oldPositions = visiblePositions != null ? visiblePositions.toArray() : null;
+                oldSpans = visiblePositions != null ? visiblePositions.spansToArray() : null;
+                oldRanked = visiblePositions != null && visiblePositions.isRanked();
+                matcher = RecyclerArrayAdapter.this.matcher;
+                index = mapped ? null : searchIndex;
+                if (index != null)
+                    index.readers++;
+                // The items are scanned out of the lock, the adapter can be modified meanwhile.
+                // A mapped list can't be modified, it's scanned without copying and indexing it.
+                // When the index answers the query, only the matching items are copied afterwards.
+                if (mapped)
+                    values = mappedSource;
+                else if (constrained && index != null && matcher == null)
+                    values = null;
+                else
+                    values = new ArrayList<>(originalValues);
+                sourceSize = mapped ? values.size() : originalValues.size();
+            }
+            // The index whose readers count this filtering, released at the end
+            SearchIndex reading = index;
+            try {
+                if (!constrained) {
+                    results.values = values;
+                    results.count = values.size();
+                } else if (values == null) {
+                    final int[] positions = index.query(prefix.toString().toLowerCase(), getParallelScan(),
+                            cancellation);
+                    if (positions == null) {
+                        droppedQueries.incrementAndGet();
+                        return null;
+                    }
+                    final ArrayList<T> newValues = new ArrayList<>(positions.length);
+                    synchronized (lock) {
+                        // Stale results are filtered again when published, their items are not needed
+                        if (sourceVersion == results.sourceVersion) {
+                            for (int position : positions) {
+                                newValues.add(originalValues.get(position));
+                            }
+                        }
+                    }
+                    results.positions = positions;
+                    results.values = newValues;
+                    results.count = positions.length;
+                } else {
+                    if (index == null && !mapped) {
+                        index = buildSearchIndex(values);
+                        synchronized (lock) {
+                            if (searchIndex == null && sourceVersion == results.sourceVersion) {
+                                searchIndex = index;
+                                index.readers++;
+                                reading = index;
+                            }
+                        }
+                    }
+                    final Matches matches = findMatches(values, index, prefix.toString().toLowerCase(), cancellation);
+                    if (matches == null) {
+                        // A newer constraint is waiting
+                        droppedQueries.incrementAndGet();
+                        return null;
+                    }
+                    final ArrayList<T> newValues = matches.getValues(values);
+                    results.positions = matches.positions;
+                    results.spans = matches.spans;
+                    results.ranked = matches.ranked;
+                    results.values = newValues;
+                    results.count = newValues.size();
+                }
+            } finally {
+                if (reading != null) {
+                    synchronized (lock) {
+                        reading.readers--;
+                    }
+                }
+            }
+            if (results.ranked || oldRanked)
+                results.updates = VisiblePositions.diffRanked(oldPositions, oldSpans, results.positions, results.spans,
+                        sourceSize);
+            else
+                results.updates = VisiblePositions.diff(oldPositions, oldSpans, results.positions, results.spans,
+                        sourceSize);
+            results.scanTimeNanos = System.nanoTime() - start;
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            if (results == null)
+                return;
+            final long start = System.nanoTime();
+            final ArrayFilterResults filterResults = results instanceof ArrayFilterResults ?
+                    (ArrayFilterResults) results : null;
+            if (results.values instanceof PagedList != (pagedSource != null)) {
+                // The adapter switched to or from a paged list while filtering
+                return;
+            }
+            if (results.values instanceof PagedList) {
+                synchronized (lock) {
+                    ((PagedList<?>) objects).setCallback(null);
+                    objects = (PagedList<T>) results.values;
+                    ((PagedList<?>) objects).setCallback(pageCallback);
+                }
+                invalidateRefresh();
+                notifyReset();
+            } else {
+                final boolean stale;
+                synchronized (lock) {
+                    stale = filterResults != null && filterResults.sourceVersion != sourceVersion;
+                }
+                if (stale) {
+                    // The positions of the results refer to items changed while scanning
+                    filterAgain(constraint, filterResults);
+                    return;
+                }
+                final boolean incremental = filterResults != null && filterResults.version == dataVersion;
+                synchronized (lock) {
+                    objects = (List<T>) results.values;
+                    filterActive = constraint != null && constraint.length() > 0;
+                    filterConstraint = filterActive ? constraint.toString().toLowerCase() : null;
+                    visiblePositions = filterResults != null && filterResults.positions != null ?
+                            new VisiblePositions(filterResults.positions, filterResults.spans, filterResults.ranked) :
+                            null;
+                    rebuildIdIndex();
+                }
+                invalidateRefresh();
+                if (incremental) {
+                    filterResults.updates.dispatchTo(getUpdateCallback());
+                } else {
+                    // The dataset changed while filtering
+                    notifyReset();
+                }
+            }
+            final FilterMetrics.Listener listener = filterMetricsListener;
+            if (listener != null) {
+                listener.onFilterPublished(new FilterMetrics(constraint != null ? constraint.toString() : null,
+                        filterResults != null ? filterResults.scanTimeNanos : 0, System.nanoTime() - start,
+                        results.count, droppedQueries.getAndSet(0)));
+            } else {
+                droppedQueries.set(0);
+            }
+        }
+
+        /**
+         * Filter again in the background after the items changed while scanning, without the
+         * debounce delay. It's repeated until a scan completes without changes, or a newer
+         * filtering starts: the filtering never runs on the main thread. It runs on a thread
+         * of its own, not on the one shared with diffs and loads.
+         */
+        private void filterAgain(final CharSequence constraint, ArrayFilterResults stale) {
+            final int request = stale.request;
+            AdapterExecutors.filter().execute(new Runnable() {
+                @Override
+                public void run() {
+                    // Not started if a newer filtering is running or has been requested
+                    if (!filterRequest.compareAndSet(request, request + 1))
+                        return;
+                    final ArrayFilterResults results = performFiltering(constraint, request + 1);
+                    if (results == null)
+                        return;
+                    AdapterExecutors.mainThread().post(new Runnable() {
+                        @Override
+                        public void run() {
+                            publishResults(constraint, results);
+                        }
+                    });
+                }
+            });
+        }
+
+        /**
+         * Filter results with the positions of the matching items in the source list and
+         * the updates to apply to the visible list.
+         */
+        private static class ArrayFilterResults extends FilterResults {
+            @Nullable
+            int[] positions;
+            @Nullable
+            int[][] spans;
+            /**
+             * True if the positions are ordered by score instead of by position
+             */
+            boolean ranked;
+            ListUpdateRecorder updates;
+            int version;
+            /**
+             * Version of the unfiltered items that were scanned
+             */
+            int sourceVersion;
+            long scanTimeNanos;
+            /**
+             * Value of {@link RecyclerArrayAdapter#filterRequest} when the filtering started
+             */
+            int request;
+        }
+    }
+
+    /**
+     * Diff calculation executed by {@link #refreshAsync(List)}. The result is posted
+     * back to the main thread where it's applied only if it's not stale. While a filter
+     * is active, the new items are indexed and filtered before being diffed.
+     */
+    private class RefreshTask implements Runnable {
+        final int generation;
+        final List<T> oldList;
+        final ArrayList<T> newList;
+        /**
+         * Normalized constraint of the active filter, null if all the new items are shown
+         */
+        @Nullable
+        final String constraint;
+        final boolean detectMoves;
+        DiffPipeline.Result result;
+        /**
+         * Index and matches of the new items, only with a constraint
+         */
+        SearchIndex index;
+        Matches matches;
+        List<T> shown;
+        boolean cancelled;
+        /**
+         * Thrown while calculating, it's reported on the main thread
+         */
+        @Nullable
+        Throwable error;
+
+        RefreshTask(int generation, List<T> oldList, ArrayList<T> newList, @Nullable String constraint,
+                    boolean detectMoves) {
+            this.generation = generation;
+            this.oldList = oldList;
+            this.newList = newList;
+            this.constraint = constraint;
+            this.detectMoves = detectMoves;
+        }
+
+        void calculate() {
+            shown = newList;
+            if (constraint != null) {
+                index = buildSearchIndex(newList);
+                matches = findMatches(newList, index, constraint, null);
+                shown = matches.getValues(newList);
+            }
+            result = DiffPipeline.calculate(getDiffUtil(oldList, shown), detectMoves);
+        }
+
+        @Override
+        public void run() {
+            try {
+                calculate();
+            } catch (RuntimeException | Error e) {
+                error = e;
+            } finally {
+                AdapterExecutors.mainThread().post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onRefreshCompleted(RefreshTask.this);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Very basic class to use as diffutil callback. If an {@link ItemKeyProvider} is set,
+     * items are compared by key and content hash. Otherwise it just uses
+     * the method equals to compare objects (both id and contents), the hash codes
+     * of the items are cached so that different items are usually rejected without
+     * calling equals.
+     */
+    protected class DiffCallback extends DiffUtil.Callback {
+
+        protected final List<T> mOldList;
+        protected final List<T> mNewList;
+        @Nullable
+        private final ItemKeyProvider<T> keyProvider;
+        private long[] oldKeys;
+        private long[] newKeys;
+        private long[] oldContents;
+        private long[] newContents;
+        private boolean[] oldCached;
+        private boolean[] newCached;
+
+        public DiffCallback(List<T> oldCollection, List<T> collection) {
+            this.mOldList = oldCollection;
+            this.mNewList = collection;
+            this.keyProvider = itemKeyProvider;
+        }
+
+        /**
+         * Hash of the item used to quickly reject different items when no key provider
+         * is set. It must be consistent with {@link #areItemsTheSame(int, int)}.
+         * @param item The item
+         * @return The hash code
+         */
+        protected int getItemHash(T item) {
+            return item.hashCode();
+        }
+
+        private void cacheOld(int position) {
+            if (oldKeys == null) {
+                oldKeys = new long[mOldList.size()];
+                oldCached = new boolean[oldKeys.length];
+                if (keyProvider != null)
+                    oldContents = new long[oldKeys.length];
+            }
+            if (!oldCached[position]) {
+                final T item = mOldList.get(position);
+                if (keyProvider != null) {
+                    oldKeys[position] = keyProvider.getKey(item);
+                    oldContents[position] = keyProvider.getContentHash(item);
+                } else {
+                    oldKeys[position] = getItemHash(item);
+                }
+                oldCached[position] = true;
+            }
+        }
+
+        private void cacheNew(int position) {
+            if (newKeys == null) {
+                newKeys = new long[mNewList.size()];
+                newCached = new boolean[newKeys.length];
+                if (keyProvider != null)
+                    newContents = new long[newKeys.length];
+            }
+            if (!newCached[position]) {
+                final T item = mNewList.get(position);
+                if (keyProvider != null) {
+                    newKeys[position] = keyProvider.getKey(item);
+                    newContents[position] = keyProvider.getContentHash(item);
+                } else {
+                    newKeys[position] = getItemHash(item);
+                }
+                newCached[position] = true;
+            }
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            final T oldItem = mOldList.get(oldItemPosition);
+            final T newItem = mNewList.get(newItemPosition);
+            if (oldItem == newItem)
+                return true;
+            if (oldItem == null || newItem == null)
+                return false;
+            cacheOld(oldItemPosition);
+            cacheNew(newItemPosition);
+            if (oldKeys[oldItemPosition] != newKeys[newItemPosition])
+                return false;
+            return keyProvider != null || oldItem.equals(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            if (keyProvider == null)
+                return areItemsTheSame(oldItemPosition, newItemPosition);
+            if (mOldList.get(oldItemPosition) == mNewList.get(newItemPosition))
+                return true;
+            cacheOld(oldItemPosition);
+            cacheNew(newItemPosition);
+            return oldContents[oldItemPosition] == newContents[newItemPosition];
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            return RecyclerArrayAdapter.this.getChangePayload(mOldList.get(oldItemPosition), mNewList.get(
+                    newItemPosition));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,463 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Prefix search index over the normalized texts of a list of items. Every text is
+ * split in tokens: the whole text and each word separated by spaces. Tokens are kept
+ * in a sorted array together with the position of their item, so the items matching
+ * a prefix are found with a binary search followed by a scan of the matching tokens only.
+ * The results of the last queries are cached: a query extending a cached one only checks
+ * the items matching the cached query, since they are a superset of its results.
+ * Insertions and removals don't touch the sorted tokens: the shifted positions are recorded
+ * in {@link PositionShifts}, the removed items are skipped and the inserted ones are matched
+ * one by one, until they're more than about the square root of the tokens and they're merged.
+ * The sorted tokens are never modified once built, so a {@link #copy()} shares them and
+ * only duplicates the pending changes.
+ * Several threads can query it at the same time, the cache is synchronized, but it must not be
+ * modified while it's queried: callers must synchronize the access or modify a copy.
+ */
+final class SearchIndex {
+
+    private static final int MAX_CACHED_QUERIES = 16;
+    private static final int MIN_PENDING_CHANGES = 16;
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * Texts of the items by stored position, shared by the copies
+     */
+    private String[] storedTexts;
+    /**
+     * Sorted tokens and the stored positions of their items, shared by the copies
+     */
+    private String[] tokens;
+    private int[] positions;
+    private final PositionShifts shifts;
+    /**
+     * Sorted stored positions of the removed items
+     */
+    private int[] removed;
+    private int removedCount;
+    /**
+     * Current positions, sorted, and texts of the items inserted since the last merge
+     */
+    private int[] insertedPositions;
+    private String[] insertedTexts;
+    private int insertedCount;
+    private int size;
+    /**
+     * Number of threads querying the index, maintained by the owner to know when it must be
+     * copied before being modified. Guarded by the lock of the owner.
+     */
+    int readers;
+    /**
+     * Results of the last queries, in access order. Guarded by itself, since even a get
+     * changes the order.
+     */
+    private final LinkedHashMap<String, int[]> cache = new LinkedHashMap<String, int[]>(MAX_CACHED_QUERIES, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > MAX_CACHED_QUERIES;
+        }
+    };
+
+    SearchIndex(@NonNull List<String> normalizedTexts) {
+        storedTexts = normalizedTexts.toArray(new String[0]);
+        final List<Token> all = new ArrayList<>();
+        for (int i = 0; i < storedTexts.length; i++) {
+            addTokens(all, storedTexts[i], i);
+        }
+        setTokens(sort(all));
+        size = storedTexts.length;
+        shifts = new PositionShifts();
+        removed = EMPTY;
+        insertedPositions = EMPTY;
+        insertedTexts = new String[0];
+    }
+
+    private SearchIndex(@NonNull SearchIndex other) {
+        storedTexts = other.storedTexts;
+        tokens = other.tokens;
+        positions = other.positions;
+        shifts = new PositionShifts(other.shifts);
+        removed = Arrays.copyOf(other.removed, other.removedCount);
+        removedCount = other.removedCount;
+        insertedPositions = Arrays.copyOf(other.insertedPositions, other.insertedCount);
+        insertedTexts = Arrays.copyOf(other.insertedTexts, other.insertedCount);
+        insertedCount = other.insertedCount;
+        size = other.size;
+    }
+
+    /**
+     * Copy the index without the cached queries. It only reads the pending changes, so it can
+     * be called while another thread is querying this index.
+     */
+    @NonNull
+    SearchIndex copy() {
+        return new SearchIndex(this);
+    }
+
+    /**
+     * Add the tokens of a text: the whole text and its words, except the first one
+     */
+    private static void addTokens(List<Token> out, String text, int position) {
+        out.add(new Token(text, position));
+        int start = nextWord(text, 0);
+        while (start < text.length()) {
+            final int end = wordEnd(text, start);
+            if (start > 0)
+                out.add(new Token(text.substring(start, end), position));
+            start = nextWord(text, end);
+        }
+    }
+
+    private static Token[] sort(List<Token> tokens) {
+        final Token[] all = tokens.toArray(new Token[0]);
+        Arrays.sort(all, new Comparator<Token>() {
+            @Override
+            public int compare(Token o1, Token o2) {
+                return o1.token.compareTo(o2.token);
+            }
+        });
+        return all;
+    }
+
+    private void setTokens(Token[] sorted) {
+        tokens = new String[sorted.length];
+        positions = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            tokens[i] = sorted[i].token;
+            positions[i] = sorted[i].position;
+        }
+    }
+
+    private static final class Token {
+        final String token;
+        final int position;
+
+        Token(String token, int position) {
+            this.token = token;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Return true if the text or one of its words starts with the prefix. It doesn't allocate.
+     */
+    static boolean matches(@NonNull String text, @NonNull String prefix) {
+        if (text.startsWith(prefix))
+            return true;
+        // Words never contain spaces
+        if (prefix.indexOf(' ') >= 0)
+            return false;
+        for (int i = text.indexOf(' '); i >= 0; i = text.indexOf(' ', i + 1)) {
+            if (text.startsWith(prefix, i + 1))
+                return true;
+        }
+        return false;
+    }
+
+    private static int nextWord(String text, int from) {
+        while (from < text.length() && text.charAt(from) == ' ')
+            from++;
+        return from;
+    }
+
+    private static int wordEnd(String text, int from) {
+        final int end = text.indexOf(' ', from);
+        return end < 0 ? text.length() : end;
+    }
+
+    @NonNull
+    String getText(int position) {
+        final int inserted = Arrays.binarySearch(insertedPositions, 0, insertedCount, position);
+        return inserted >= 0 ? insertedTexts[inserted] : storedTexts[shifts.stored(position)];
+    }
+
+    /**
+     * Find the items matching the prefix
+     * @param prefix The normalized prefix
+     * @param scan Used to check in parallel the results of a previous query, null to check them
+     *             on the calling thread
+     * @param cancellation Checked during long scans
+     * @return The sorted positions of the matching items, the array must not be modified, or
+     * null if cancelled
+     */
+    @Nullable
+    int[] query(@NonNull String prefix, @Nullable ParallelScan scan, @Nullable ParallelScan.Cancellation cancellation) {
+        int[] result;
+        // Look for the longest cached query that is a prefix of this one
+        int[] candidates = null;
+        synchronized (cache) {
+            result = cache.get(prefix);
+            if (result != null)
+                return result;
+            int candidatesLength = -1;
+            for (Map.Entry<String, int[]> entry : cache.entrySet()) {
+                final String key = entry.getKey();
+                if (key.length() > candidatesLength && prefix.startsWith(key)) {
+                    candidates = entry.getValue();
+                    candidatesLength = key.length();
+                }
+            }
+        }
+
+        if (candidates != null) {
+            result = scan != null ? narrow(candidates, prefix, scan, cancellation) : narrow(candidates, prefix);
+            if (result == null)
+                return null;
+        } else {
+            final BitSet matches = new BitSet(size);
+            for (int i = lowerBound(prefix); i < tokens.length && tokens[i].startsWith(prefix); i++) {
+                if (removedCount == 0 || Arrays.binarySearch(removed, 0, removedCount, positions[i]) < 0)
+                    matches.set(shifts.current(positions[i]));
+            }
+            for (int i = 0; i < insertedCount; i++) {
+                if (matches(insertedTexts[i], prefix))
+                    matches.set(insertedPositions[i]);
+            }
+            result = new int[matches.cardinality()];
+            int n = 0;
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                result[n++] = i;
+            }
+        }
+        synchronized (cache) {
+            cache.put(prefix, result);
+        }
+        return result;
+    }
+
+    private void clearCache() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    @Nullable
+    private int[] narrow(final int[] candidates, final String prefix, @NonNull ParallelScan scan,
+                         @Nullable ParallelScan.Cancellation cancellation) {
+        final int[] matches = scan.scan(candidates.length, new ParallelScan.Predicate() {
+            @Override
+            public boolean matches(int index) {
+                return SearchIndex.matches(getText(candidates[index]), prefix);
+            }
+        }, cancellation);
+        if (matches == null)
+            return null;
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = candidates[matches[i]];
+        }
+        return matches;
+    }
+
+    private int[] narrow(int[] candidates, String prefix) {
+        int[] result = null;
+        int n = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            if (matches(getText(candidates[i]), prefix)) {
+                if (result == null)
+                    result = new int[candidates.length - i];
+                result[n++] = candidates[i];
+            }
+        }
+        return result == null ? EMPTY : Arrays.copyOf(result, n);
+    }
+
+    private int lowerBound(String token) {
+        int low = 0;
+        int high = tokens.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (tokens[mid].compareTo(token) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    void add(@NonNull String text) {
+        insert(size, text);
+    }
+
+    /**
+     * Append several items. Their tokens are sorted apart and merged once with the others,
+     * instead of being inserted one by one.
+     * @param normalizedTexts The normalized texts of the items
+     */
+    void addAll(@NonNull List<String> normalizedTexts) {
+        clearCache();
+        merge();
+        final int first = storedTexts.length;
+        storedTexts = Arrays.copyOf(storedTexts, first + normalizedTexts.size());
+        final List<Token> tokenList = new ArrayList<>();
+        for (int i = 0; i < normalizedTexts.size(); i++) {
+            storedTexts[first + i] = normalizedTexts.get(i);
+            addTokens(tokenList, normalizedTexts.get(i), first + i);
+        }
+        mergeTokens(tokens.length, sort(tokenList));
+        size = storedTexts.length;
+    }
+
+    /**
+     * Merge the sorted tokens, except the removed ones, with the added ones, mapping the
+     * stored positions to the current ones
+     * @param count The number of sorted tokens to keep
+     */
+    private void mergeTokens(int count, Token[] added) {
+        final String[] mergedTokens = new String[count + added.length];
+        final int[] mergedPositions = new int[mergedTokens.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < tokens.length || j < added.length) {
+            if (i < tokens.length && removedCount > 0 &&
+                    Arrays.binarySearch(removed, 0, removedCount, positions[i]) >= 0) {
+                i++;
+            } else if (j == added.length || (i < tokens.length && tokens[i].compareTo(added[j].token) <= 0)) {
+                mergedTokens[k] = tokens[i];
+                mergedPositions[k++] = shifts.current(positions[i++]);
+            } else {
+                mergedTokens[k] = added[j].token;
+                mergedPositions[k++] = added[j++].position;
+            }
+        }
+        tokens = mergedTokens;
+        positions = mergedPositions;
+    }
+
+    /**
+     * Merge the pending insertions and removals with the sorted tokens
+     */
+    private void merge() {
+        if (shifts.count() == 0 && removedCount == 0 && insertedCount == 0)
+            return;
+        final String[] texts = new String[size];
+        for (int i = 0; i < storedTexts.length; i++) {
+            if (removedCount == 0 || Arrays.binarySearch(removed, 0, removedCount, i) < 0)
+                texts[shifts.current(i)] = storedTexts[i];
+        }
+        final List<Token> tokenList = new ArrayList<>();
+        for (int i = 0; i < insertedCount; i++) {
+            texts[insertedPositions[i]] = insertedTexts[i];
+            addTokens(tokenList, insertedTexts[i], insertedPositions[i]);
+        }
+        int count = 0;
+        for (int i = 0; i < tokens.length; i++) {
+            if (removedCount == 0 || Arrays.binarySearch(removed, 0, removedCount, positions[i]) < 0)
+                count++;
+        }
+        mergeTokens(count, sort(tokenList));
+        storedTexts = texts;
+        shifts.clear();
+        removedCount = 0;
+        insertedCount = 0;
+        Arrays.fill(insertedTexts, null);
+    }
+
+    private void mergeIfNeeded() {
+        final int max = Math.max(MIN_PENDING_CHANGES, (int) Math.sqrt(tokens.length));
+        if (shifts.count() > max || removedCount > max || insertedCount > max)
+            merge();
+    }
+
+    void insert(int position, @NonNull String text) {
+        clearCache();
+        shifts.inserted(position, 1);
+        int index = Arrays.binarySearch(insertedPositions, 0, insertedCount, position);
+        if (index < 0)
+            index = -index - 1;
+        for (int i = index; i < insertedCount; i++) {
+            insertedPositions[i]++;
+        }
+        if (insertedCount == insertedPositions.length) {
+            insertedPositions = Arrays.copyOf(insertedPositions, Math.max(MIN_PENDING_CHANGES, insertedCount * 2));
+            insertedTexts = Arrays.copyOf(insertedTexts, insertedPositions.length);
+        }
+        System.arraycopy(insertedPositions, index, insertedPositions, index + 1, insertedCount - index);
+        System.arraycopy(insertedTexts, index, insertedTexts, index + 1, insertedCount - index);
+        insertedPositions[index] = position;
+        insertedTexts[index] = text;
+        insertedCount++;
+        size++;
+        mergeIfNeeded();
+    }
+
+    void remove(int position) {
+        clearCache();
+        final int inserted = Arrays.binarySearch(insertedPositions, 0, insertedCount, position);
+        if (inserted >= 0) {
+            System.arraycopy(insertedPositions, inserted + 1, insertedPositions, inserted, insertedCount - inserted - 1);
+            System.arraycopy(insertedTexts, inserted + 1, insertedTexts, inserted, insertedCount - inserted - 1);
+            insertedTexts[--insertedCount] = null;
+        } else {
+            final int stored = shifts.stored(position);
+            if (removedCount == removed.length)
+                removed = Arrays.copyOf(removed, Math.max(MIN_PENDING_CHANGES, removedCount * 2));
+            final int index = -Arrays.binarySearch(removed, 0, removedCount, stored) - 1;
+            System.arraycopy(removed, index, removed, index + 1, removedCount - index);
+            removed[index] = stored;
+            removedCount++;
+        }
+        shifts.removed(position);
+        for (int i = 0; i < insertedCount; i++) {
+            if (insertedPositions[i] > position)
+                insertedPositions[i]--;
+        }
+        size--;
+        mergeIfNeeded();
+    }
+
+    /**
+     * Reorder the items. The tokens don't change, only their positions.
+     * @param newPositions The new position of each item
+     */
+    void permute(@NonNull int[] newPositions) {
+        clearCache();
+        merge();
+        final String[] reordered = new String[storedTexts.length];
+        for (int i = 0; i < reordered.length; i++) {
+            reordered[newPositions[i]] = storedTexts[i];
+        }
+        storedTexts = reordered;
+        final int[] permuted = new int[positions.length];
+        for (int i = 0; i < positions.length; i++) {
+            permuted[i] = newPositions[positions[i]];
+        }
+        positions = permuted;
+    }
+
+    void move(int fromPosition, int toPosition) {
+        final String text = getText(fromPosition);
+        remove(fromPosition);
+        insert(toPosition, text);
+    }
+}
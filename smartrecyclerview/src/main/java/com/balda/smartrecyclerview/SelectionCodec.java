@@ -0,0 +1,181 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Compact binary encoding of a selection. Checked positions are stored as runs of consecutive
+ * positions, checked ids are sorted and stored as deltas. All the numbers are varints, so a
+ * range of selected items takes a few bytes whatever its length.
+ */
+final class SelectionCodec {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private SelectionCodec() {
+    }
+
+    /**
+     * Decoded selection
+     */
+    static final class Selection {
+        final BitSet positions;
+        @Nullable
+        final LongIntMap ids;
+
+        Selection(BitSet positions, @Nullable LongIntMap ids) {
+            this.positions = positions;
+            this.ids = ids;
+        }
+    }
+
+    @NonNull
+    static byte[] encode(@NonNull BitSet positions, @Nullable LongIntMap ids) {
+        final Writer out = new Writer();
+        out.writeVarint(FORMAT_VERSION);
+        int runs = 0;
+        for (int i = positions.nextSetBit(0); i >= 0; i = positions.nextSetBit(positions.nextClearBit(i))) {
+            runs++;
+        }
+        out.writeVarint(runs);
+        int previousEnd = 0;
+        int start = positions.nextSetBit(0);
+        while (start >= 0) {
+            final int end = positions.nextClearBit(start);
+            out.writeVarint(start - previousEnd);
+            out.writeVarint(end - start);
+            previousEnd = end;
+            start = positions.nextSetBit(end);
+        }
+        if (ids == null) {
+            out.writeVarint(0);
+        } else {
+            out.writeVarint(ids.size() + 1);
+            final long[] keys = ids.keys();
+            long previousKey = 0;
+            int previousPosition = 0;
+            for (long key : keys) {
+                final int position = ids.get(key, 0);
+                out.writeVarLong(zigZag(key - previousKey));
+                out.writeVarLong(zigZag(position - previousPosition));
+                previousKey = key;
+                previousPosition = position;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the data is not valid
+     */
+    @NonNull
+    static Selection decode(@NonNull byte[] data) {
+        final Reader in = new Reader(data);
+        if (in.readVarint() != FORMAT_VERSION)
+            throw new IllegalArgumentException("Unknown selection format");
+        final BitSet positions = new BitSet();
+        final int runs = in.readVarint();
+        int position = 0;
+        for (int i = 0; i < runs; i++) {
+            final int gap = in.readVarint();
+            final int length = in.readVarint();
+            if (gap < 0 || length < 0 || (long) position + gap + length > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Invalid selection run");
+            position += gap;
+            positions.set(position, position + length);
+            position += length;
+        }
+        final int n = in.readVarint() - 1;
+        LongIntMap ids = null;
+        if (n > data.length)
+            throw new IllegalArgumentException("Truncated selection");
+        if (n >= 0) {
+            ids = new LongIntMap(n);
+            long key = 0;
+            int idPosition = 0;
+            for (int i = 0; i < n; i++) {
+                key += unZigZag(in.readVarLong());
+                idPosition += (int) unZigZag(in.readVarLong());
+                ids.put(key, idPosition);
+            }
+        }
+        return new Selection(positions, ids);
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static final class Writer {
+        private byte[] buffer = new byte[64];
+        private int size;
+
+        void writeVarint(int value) {
+            writeVarLong(value & 0xffffffffL);
+        }
+
+        void writeVarLong(long value) {
+            if (size + 10 > buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            while ((value & ~0x7fL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    private static final class Reader {
+        private final byte[] data;
+        private int position;
+
+        Reader(byte[] data) {
+            this.data = data;
+        }
+
+        int readVarint() {
+            return (int) readVarLong();
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= data.length)
+                    throw new IllegalArgumentException("Truncated selection");
+                final byte b = data[position++];
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+    }
+}
@@ -30,23 +30,69 @@ import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+import java.util.zip.CRC32;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.collection.LongSparseArray;
 import androidx.recyclerview.widget.RecyclerView;
 
 @SuppressWarnings("unused")
 public class SmartRecycleView extends RecyclerView implements CheckableList {
 
     private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
-    private SparseBooleanArray checkStates;
-    private LongSparseArray<Integer> checkedIdStates;
+    /**
+     * Default size of the encoded selection above which it's saved in a file instead of the parcel
+     */
+    public static final int DEFAULT_SAVED_STATE_SPILL_THRESHOLD = 64 * 1024;
+    private static final String SPILL_FILE_PREFIX = "smartrecycleview-selection-";
+    /**
+     * Spill files not written for this time are deleted, their views are not coming back
+     */
+    private static final long SPILL_FILE_MAX_AGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+    private static volatile boolean spillFilesSwept;
+    /**
+     * Checked positions, one bit per position
+     */
+    private BitSet checkStates;
+    /**
+     * Checked ids mapped to their last known position, only with stable ids
+     */
+    @Nullable
+    private LongIntMap checkedIdStates;
+    private final CheckedPositionShifter positionShifter = new CheckedPositionShifter();
+    private final BulkSelection bulkSelection = new BulkSelection();
+    private final BulkSelection.ItemIds itemIds = new BulkSelection.ItemIds() {
+        @Override
+        public boolean isItemIdKnown(int position) {
+            return SmartRecycleView.this.isItemIdKnown(position);
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return getAdapter().getItemId(position);
+        }
+    };
     private int checkedItemCount = 0;
+    private int savedStateSpillThreshold = DEFAULT_SAVED_STATE_SPILL_THRESHOLD;
+    /**
+     * File of the selection of this view when it's too large for the instance state, overwritten
+     * at every save. It's kept by the view restored from its state, so views with the same id
+     * in other windows or fragments have a file of their own.
+     */
+    @Nullable
+    private File spillFile;
+    @Nullable
+    private TouchLatencyMonitor touchLatencyMonitor;
+    @Nullable
+    private PrewarmedViewPool prewarmedViewPool;
+    private boolean attached;
     @Nullable
     private MultiChoiceModeWrapper multiChoiceModeCallback;
     @Nullable
@@ -54,7 +100,10 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
     @ChoiceMode
     private int choiceMode;
     private AdapterDataSetObserver adapterDataSetObserver;
-    private Set<OnItemClickListener> onItemClickListeners = new HashSet<>();
+    /**
+     * Copy on write, so that the dispatch iterates an array without allocating
+     */
+    private OnItemClickListener[] onItemClickListeners = new OnItemClickListener[0];
     private ItemTouchListener onItemTouchListener;
 
     public interface OnItemClickListener {
@@ -101,10 +150,43 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
         super.setAdapter(adapter);
         adapterDataSetObserver = new AdapterDataSetObserver();
         adapter.registerAdapterDataObserver(adapterDataSetObserver);
-        checkStates = new SparseBooleanArray(0);
+        checkStates = new BitSet();
         if (adapter.hasStableIds()) {
-            checkedIdStates = new LongSparseArray<>(0);
+            checkedIdStates = new LongIntMap();
         }
+        if (prewarmedViewPool != null)
+            prewarmedViewPool.schedule();
+    }
+
+    /**
+     * Set the pool of recycled views. A {@link PrewarmedViewPool} is filled in advance by the
+     * adapter of this view while attached to the window.
+     * @param pool The pool, it can be shared by several views
+     */
+    @Override
+    public void setRecycledViewPool(@Nullable RecycledViewPool pool) {
+        if (prewarmedViewPool != null && attached)
+            prewarmedViewPool.detach(this);
+        prewarmedViewPool = pool instanceof PrewarmedViewPool ? (PrewarmedViewPool) pool : null;
+        super.setRecycledViewPool(pool);
+        if (prewarmedViewPool != null && attached)
+            prewarmedViewPool.attach(this);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        attached = true;
+        if (prewarmedViewPool != null)
+            prewarmedViewPool.attach(this);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        attached = false;
+        if (prewarmedViewPool != null)
+            prewarmedViewPool.detach(this);
+        super.onDetachedFromWindow();
     }
 
     public void setChoiceMode(@ChoiceMode int choiceMode) {
@@ -131,33 +213,33 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
     }
 
     public boolean isItemChecked(int position) {
-        return checkStates.get(position);
+        return position >= 0 && checkStates.get(position);
     }
 
+    /**
+     * Return a copy of the checked positions
+     * @return The checked positions
+     */
     public SparseBooleanArray getCheckedItemPositions() {
-        return checkStates;
+        final SparseBooleanArray positions = new SparseBooleanArray(checkedItemCount);
+        for (int i = checkStates.nextSetBit(0); i >= 0; i = checkStates.nextSetBit(i + 1)) {
+            positions.append(i, true);
+        }
+        return positions;
     }
 
     public long[] getCheckedItemIds() {
-        final LongSparseArray<Integer> idStates = checkedIdStates;
+        final LongIntMap idStates = checkedIdStates;
         if (idStates == null) {
             return new long[0];
         }
-
-        final int count = idStates.size();
-        final long[] ids = new long[count];
-
-        for (int i = 0; i < count; i++) {
-            ids[i] = idStates.keyAt(i);
-        }
-
-        return ids;
+        return idStates.keys();
     }
 
     public void clearChoices() {
         if (checkedItemCount > 0) {
-            final int start = checkStates.keyAt(0);
-            final int end = checkStates.keyAt(checkStates.size() - 1);
+            final int start = checkStates.nextSetBit(0);
+            final int end = checkStates.length() - 1;
             checkStates.clear();
             if (checkedIdStates != null) {
                 checkedIdStates.clear();
@@ -166,7 +248,7 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
 
             Adapter adapter = getAdapter();
             if (adapter != null)
-                adapter.notifyItemRangeChanged(start, end - start + 1);
+                adapter.notifyItemRangeChanged(start, end - start + 1, BaseViewHolder.PAYLOAD_CHECKED_STATE);
 
             if (choiceActionMode != null) {
                 choiceActionMode.finish();
@@ -177,6 +259,9 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
     public void setItemChecked(int position, boolean value, boolean notifyChanged) {
         if (choiceMode == NONE || getAdapter() == null)
             return;
+        // A placeholder of a page not loaded yet has no id to store
+        if (value && checkedIdStates != null && !isItemIdKnown(position))
+            return;
 
         // Start selection mode if needed. We don't need to if we're unchecking something.
         if (value) {
@@ -185,17 +270,17 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
 
         if (choiceMode == MULTI || choiceMode == MULTI_MODAL) {
             boolean oldValue = checkStates.get(position);
-            checkStates.put(position, value);
+            checkStates.set(position, value);
 
             if (oldValue != value) {
-                final long id = getAdapter().getItemId(position);
-
-                if (checkedIdStates != null) {
-                    if (value) {
-                        checkedIdStates.put(id, position);
-                    } else {
-                        checkedIdStates.delete(id);
-                    }
+                final long id;
+                if (checkedIdStates == null) {
+                    id = getAdapter().getItemId(position);
+                } else if (value) {
+                    id = getAdapter().getItemId(position);
+                    checkedIdStates.put(id, position);
+                } else {
+                    id = removeCheckedId(position);
                 }
 
                 if (value) {
@@ -205,7 +290,7 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
                 }
 
                 if (notifyChanged) {
-                    getAdapter().notifyItemChanged(position);
+                    getAdapter().notifyItemChanged(position, BaseViewHolder.PAYLOAD_CHECKED_STATE);
                 }
 
                 if (choiceActionMode != null) {
@@ -221,8 +306,11 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
             // Clear all values if we're checking something, or unchecking the currently
             // selected item
             boolean oldValue = isItemChecked(position);
-            int oldCount = checkedItemCount;
-            if (value || isItemChecked(position)) {
+            int oldPosition = checkedItemCount > 0 ? checkStates.nextSetBit(0) : -1;
+            if (oldPosition < 0)
+                oldPosition = NO_POSITION;
+            final boolean cleared = value || oldValue;
+            if (cleared) {
                 checkStates.clear();
                 if (updateIds) {
                     checkedIdStates.clear();
@@ -231,38 +319,117 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
             // this may end up selecting the value we just cleared but this way
             // we ensure length of mCheckStates is 1, a fact getCheckedItemPosition relies on
             if (value) {
-                checkStates.put(position, true);
+                checkStates.set(position);
                 if (updateIds) {
                     checkedIdStates.put(getAdapter().getItemId(position), position);
                 }
                 checkedItemCount = 1;
-            } else if (checkStates.size() == 0 || !checkStates.valueAt(0)) {
+            } else if (checkStates.isEmpty()) {
                 checkedItemCount = 0;
             }
 
             /*
-             * Update only one item if: we are deselecting it or we are selecting it
-             * but the there wasn't any item checked.
+             * Update only the previously checked item and the item itself, just
+             * their checked state is changed.
              */
-            if ((oldValue && !value) || oldCount == 0)
-                getAdapter().notifyItemChanged(position);
-            else
-                getAdapter().notifyDataSetChanged();
+            if (cleared && oldPosition != NO_POSITION && oldPosition != position)
+                getAdapter().notifyItemChanged(oldPosition, BaseViewHolder.PAYLOAD_CHECKED_STATE);
+            if (oldValue != value)
+                getAdapter().notifyItemChanged(position, BaseViewHolder.PAYLOAD_CHECKED_STATE);
+        }
+    }
+
+    /**
+     * Return false for the placeholders of a paged adapter, their id is not known until loaded
+     */
+    private boolean isItemIdKnown(int position) {
+        final Adapter adapter = getAdapter();
+        return !(adapter instanceof RecyclerArrayAdapter) || ((RecyclerArrayAdapter) adapter).isItemIdKnown(position);
+    }
+
+    /**
+     * Remove the id of a checked position. The id of a placeholder is found by its last known position.
+     * @return The id or NO_ID if not found
+     */
+    private long removeCheckedId(int position) {
+        if (isItemIdKnown(position)) {
+            final long id = getAdapter().getItemId(position);
+            checkedIdStates.remove(id);
+            return id;
+        }
+        for (int slot = 0; slot < checkedIdStates.slotCount(); slot++) {
+            if (checkedIdStates.isSlotUsed(slot) && checkedIdStates.valueAt(slot) == position) {
+                final long id = checkedIdStates.keyAt(slot);
+                checkedIdStates.remove(id);
+                return id;
+            }
         }
+        return NO_ID;
     }
 
     public void toggleItemChecked(int position, boolean notifyChanged) {
         setItemChecked(position, !isItemChecked(position), notifyChanged);
     }
 
+    public void selectAll() {
+        if (getAdapter() != null)
+            applyBulkSelection(0, getAdapter().getItemCount(), BulkSelection.CHECK, null);
+    }
+
+    public void selectRange(int positionStart, int itemCount, boolean value) {
+        if (getAdapter() == null)
+            return;
+        final int start = Math.max(0, positionStart);
+        final int end = Math.min(getAdapter().getItemCount(), positionStart + itemCount);
+        applyBulkSelection(start, end, value ? BulkSelection.CHECK : BulkSelection.UNCHECK, null);
+    }
+
+    public void invertSelection() {
+        if (getAdapter() != null)
+            applyBulkSelection(0, getAdapter().getItemCount(), BulkSelection.INVERT, null);
+    }
+
+    public void selectWhere(@NonNull PositionPredicate predicate) {
+        if (getAdapter() != null)
+            applyBulkSelection(0, getAdapter().getItemCount(), BulkSelection.PREDICATE, predicate);
+    }
+
+    /**
+     * Change the checked state of the positions in [start, end) in one pass, then notify
+     * the adapter with a single range and the listener with a single callback.
+     */
+    private void applyBulkSelection(int start, int end, int operation, @Nullable PositionPredicate predicate) {
+        if (choiceMode != MULTI && choiceMode != MULTI_MODAL)
+            return;
+        if (!bulkSelection.apply(checkStates, checkedIdStates, itemIds, start, end, operation, predicate))
+            return;
+        final int checked = bulkSelection.getChecked();
+        final int unchecked = bulkSelection.getUnchecked();
+        final int firstChanged = bulkSelection.getFirstChanged();
+        checkedItemCount += checked - unchecked;
+        if (checked > 0)
+            startSupportActionModeIfNeeded();
+        getAdapter().notifyItemRangeChanged(firstChanged, bulkSelection.getLastChanged() - firstChanged + 1,
+                BaseViewHolder.PAYLOAD_CHECKED_STATE);
+        if (choiceActionMode != null) {
+            if (multiChoiceModeCallback != null)
+                multiChoiceModeCallback.onItemsCheckedStateChanged(choiceActionMode, checked, unchecked);
+            if (checkedItemCount == 0)
+                choiceActionMode.finish();
+        }
+    }
+
     public Parcelable onSaveInstanceState() {
         SavedState savedState = new SavedState();
         savedState.checkedItemCount = checkedItemCount;
-        savedState.checkStates = checkStates.clone();
+        // The encoding is also the snapshot of the selection, no need to copy it
+        savedState.selection = SelectionCodec.encode(checkStates, checkedIdStates);
+        if (spillFile == null)
+            spillFile = new File(getContext().getCacheDir(), SPILL_FILE_PREFIX + UUID.randomUUID() + ".bin");
+        savedState.spillFile = spillFile;
+        // Written once here, the parcel can be written many times or not at all
+        savedState.spill(savedStateSpillThreshold);
         savedState.recycledState = super.onSaveInstanceState();
-        if (checkedIdStates != null) {
-            savedState.checkedIdStates = checkedIdStates.clone();
-        }
         return savedState;
     }
 
@@ -271,10 +438,16 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
             return;
         SavedState savedState = (SavedState) state;
         super.onRestoreInstanceState(savedState.recycledState);
-        if (checkedItemCount == 0) {
+        if (savedState.spillFile != null)
+            spillFile = savedState.spillFile;
+        // The saved selection is read only if it's applied, the spill file is deleted anyway
+        final SelectionCodec.Selection selection = checkedItemCount == 0 && savedState.checkedItemCount > 0 ?
+                savedState.readSelection() : null;
+        savedState.deleteSpill();
+        if (selection != null) {
             checkedItemCount = savedState.checkedItemCount;
-            checkStates = savedState.checkStates;
-            checkedIdStates = savedState.checkedIdStates;
+            checkStates = selection.positions;
+            checkedIdStates = selection.ids;
 
             if (checkedItemCount > 0) {
                 Adapter adapter = getAdapter();
@@ -315,11 +488,54 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
         }
     }
 
+    /**
+     * Set the size of the encoded selection above which it's saved in a file of the cache
+     * directory instead of the instance state, to avoid a TransactionTooLargeException
+     * with very large selections. Default is {@link #DEFAULT_SAVED_STATE_SPILL_THRESHOLD}.
+     * Each view has a file of its own, written when the state is saved and deleted when it's
+     * restored or when the selection fits in the instance state again.
+     * @param bytes The size in bytes, Integer.MAX_VALUE to always keep it in the instance state
+     */
+    public void setSavedStateSpillThreshold(int bytes) {
+        savedStateSpillThreshold = bytes;
+    }
+
+    /**
+     * Measure the latency of taps, long presses, selection toggles and drag starts
+     * @param monitor The monitor or null to disable the measures
+     */
+    public void setTouchLatencyMonitor(@Nullable TouchLatencyMonitor monitor) {
+        touchLatencyMonitor = monitor;
+    }
+
+    @Nullable
+    public TouchLatencyMonitor getTouchLatencyMonitor() {
+        return touchLatencyMonitor;
+    }
+
     public static class SavedState implements Parcelable {
 
+        private static final int SELECTION_INLINE = 0;
+        private static final int SELECTION_FILE = 1;
+
         int checkedItemCount;
-        SparseBooleanArray checkStates;
-        LongSparseArray<Integer> checkedIdStates;
+        /**
+         * Selection encoded by {@link SelectionCodec}, null if read from a parcel and saved
+         * in {@link #spillFile}
+         */
+        @Nullable
+        byte[] selection;
+        /**
+         * File of the view for the selection too large for the parcel
+         */
+        @Nullable
+        File spillFile;
+        /**
+         * Checksum of the spilled selection. The file is overwritten by the next save of the
+         * view and deleted when restored, a selection that doesn't match is ignored.
+         */
+        long spillChecksum;
+        private boolean spilled;
         Parcelable recycledState;
 
         SavedState() {
@@ -327,28 +543,133 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
 
         SavedState(Parcel in) {
             checkedItemCount = in.readInt();
-            checkStates = in.readSparseBooleanArray();
-            final int n = in.readInt();
-            if (n >= 0) {
-                checkedIdStates = new LongSparseArray<>(n);
-                for (int i = 0; i < n; i++) {
-                    final long key = in.readLong();
-                    final int value = in.readInt();
-                    checkedIdStates.append(key, value);
-                }
+            final String spillPath = in.readString();
+            spillFile = spillPath != null ? new File(spillPath) : null;
+            // Decoded only when restored
+            if (in.readInt() == SELECTION_FILE) {
+                spillChecksum = in.readLong();
+                spilled = true;
+            } else {
+                selection = in.createByteArray();
             }
             recycledState = in.readParcelable(RecyclerView.SavedState.class.getClassLoader());
         }
 
+        /**
+         * Decode the selection, reading it from the file if it was spilled
+         * @return The selection or null if it can't be read
+         */
+        @Nullable
+        SelectionCodec.Selection readSelection() {
+            try {
+                if (selection == null && spilled) {
+                    try {
+                        final byte[] data = readFile(spillFile);
+                        if (checksum(data) == spillChecksum)
+                            selection = data;
+                    } catch (IOException e) {
+                        // The selection is lost
+                    }
+                }
+                return selection != null ? SelectionCodec.decode(selection) : null;
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Delete the spill file once the state is restored, the next save writes it again
+         */
+        void deleteSpill() {
+            if (spilled) {
+                spilled = false;
+                //noinspection ResultOfMethodCallIgnored
+                spillFile.delete();
+            }
+        }
+
+        private static byte[] readFile(File file) throws IOException {
+            final FileInputStream in = new FileInputStream(file);
+            try {
+                final byte[] data = new byte[(int) file.length()];
+                int read = 0;
+                while (read < data.length) {
+                    final int count = in.read(data, read, data.length - read);
+                    if (count < 0)
+                        throw new IOException("Truncated file " + file);
+                    read += count;
+                }
+                return data;
+            } finally {
+                in.close();
+            }
+        }
+
+        private static long checksum(byte[] data) {
+            final CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            return crc.getValue();
+        }
+
+        /**
+         * Write the selection to {@link #spillFile} if it's too large for the parcel, otherwise
+         * delete the file of a previous save of the view. The selection is still kept, for
+         * a state restored without being parceled.
+         * @param threshold The size above which the selection is written to the file
+         */
+        void spill(int threshold) {
+            sweepSpillFiles(spillFile);
+            if (selection == null || selection.length <= threshold) {
+                //noinspection ResultOfMethodCallIgnored
+                spillFile.delete();
+                return;
+            }
+            try {
+                final FileOutputStream out = new FileOutputStream(spillFile);
+                try {
+                    out.write(selection);
+                } finally {
+                    out.close();
+                }
+                spillChecksum = checksum(selection);
+                spilled = true;
+            } catch (IOException e) {
+                // Fall back to the parcel
+                //noinspection ResultOfMethodCallIgnored
+                spillFile.delete();
+            }
+        }
+
+        /**
+         * Delete, once per process, the spill files of the views that were not saved for a long
+         * time, such as the ones of the activities closed while the selection was in a file
+         */
+        private static void sweepSpillFiles(File keep) {
+            if (spillFilesSwept)
+                return;
+            spillFilesSwept = true;
+            final File[] files = keep.getParentFile() != null ? keep.getParentFile().listFiles() : null;
+            if (files == null)
+                return;
+            final long oldest = System.currentTimeMillis() - SPILL_FILE_MAX_AGE_MILLIS;
+            for (File file : files) {
+                if (file.getName().startsWith(SPILL_FILE_PREFIX) && !file.equals(keep) &&
+                        file.lastModified() < oldest)
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+            }
+        }
+
         @Override
         public void writeToParcel(Parcel out, int flags) {
             out.writeInt(checkedItemCount);
-            out.writeSparseBooleanArray(checkStates);
-            final int n = checkedIdStates != null ? checkedIdStates.size() : -1;
-            out.writeInt(n);
-            for (int i = 0; i < n; i++) {
-                out.writeLong(checkedIdStates.keyAt(i));
-                out.writeInt(checkedIdStates.valueAt(i));
+            out.writeString(spillFile != null ? spillFile.getPath() : null);
+            if (spilled) {
+                out.writeInt(SELECTION_FILE);
+                out.writeLong(spillChecksum);
+            } else {
+                out.writeInt(SELECTION_INLINE);
+                out.writeByteArray(selection);
             }
             out.writeParcelable(recycledState, flags);
         }
@@ -391,28 +712,53 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
             // Clear out the positional check states, we'll rebuild it below from IDs.
             checkStates.clear();
 
-            for (int checkedIndex = 0; checkedIndex < checkedIdStates.size(); checkedIndex++) {
-                final long id = checkedIdStates.keyAt(checkedIndex);
-                final int lastPos = checkedIdStates.valueAt(checkedIndex);
+            final RecyclerArrayAdapter<?, ?> indexedAdapter = getAdapter() instanceof RecyclerArrayAdapter &&
+                    ((RecyclerArrayAdapter) getAdapter()).hasIdIndex() ? (RecyclerArrayAdapter) getAdapter() : null;
+            long[] removed = null;
+            int removedCount = 0;
+            for (int slot = 0; slot < checkedIdStates.slotCount(); slot++) {
+                if (!checkedIdStates.isSlotUsed(slot))
+                    continue;
+                final long id = checkedIdStates.keyAt(slot);
+                final int lastPos = checkedIdStates.valueAt(slot);
+                if (lastPos < itemCount && !isItemIdKnown(lastPos)) {
+                    // A placeholder of a page not loaded yet, assume the item is still there
+                    checkStates.set(lastPos);
+                    continue;
+                }
 
                 if ((lastPos >= itemCount) || (id != getAdapter().getItemId(lastPos))) {
-                    // Look around to see if the ID is nearby. If not, uncheck it.
-                    final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                    final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, itemCount);
                     boolean found = false;
-                    for (int searchPos = start; searchPos < end; searchPos++) {
-                        final long searchId = getAdapter().getItemId(searchPos);
-                        if (id == searchId) {
+                    if (indexedAdapter != null) {
+                        // The adapter knows where the ID is, no need to search
+                        final int position = indexedAdapter.getPositionForId(id);
+                        if (position != NO_POSITION) {
                             found = true;
-                            checkStates.put(searchPos, true);
-                            checkedIdStates.setValueAt(checkedIndex, searchPos);
-                            break;
+                            checkStates.set(position);
+                            checkedIdStates.setValueAt(slot, position);
+                        }
+                    } else {
+                        // Look around to see if the ID is nearby. If not, uncheck it.
+                        final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
+                        final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, itemCount);
+                        for (int searchPos = start; searchPos < end; searchPos++) {
+                            if (!isItemIdKnown(searchPos))
+                                continue;
+                            final long searchId = getAdapter().getItemId(searchPos);
+                            if (id == searchId) {
+                                found = true;
+                                checkStates.set(searchPos);
+                                checkedIdStates.setValueAt(slot, searchPos);
+                                break;
+                            }
                         }
                     }
 
                     if (!found) {
-                        checkedIdStates.delete(id);
-                        checkedIndex--;
+                        // Removed after the loop to keep the slots stable
+                        if (removed == null)
+                            removed = new long[checkedIdStates.size()];
+                        removed[removedCount++] = id;
                         checkedItemCount--;
                         checkedCountChanged = true;
                         if (choiceActionMode != null && multiChoiceModeCallback != null) {
@@ -420,17 +766,20 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
                         }
                     }
                 } else {
-                    checkStates.put(lastPos, true);
+                    checkStates.set(lastPos);
                 }
             }
+            for (int i = 0; i < removedCount; i++) {
+                checkedIdStates.remove(removed[i]);
+            }
         } else {
             // If the total number of items decreased, remove all out-of-range check indexes.
-            for (int i = checkStates.size() - 1; (i >= 0) && (checkStates.keyAt(i) >= itemCount); i--) {
-                if (checkStates.valueAt(i)) {
-                    checkedItemCount--;
-                    checkedCountChanged = true;
-                }
-                checkStates.delete(checkStates.keyAt(i));
+            final int outOfRange = checkStates.length() > itemCount ? checkStates.get(itemCount,
+                    checkStates.length()).cardinality() : 0;
+            if (outOfRange > 0) {
+                checkStates.clear(itemCount, checkStates.length());
+                checkedItemCount -= outOfRange;
+                checkedCountChanged = true;
             }
         }
 
@@ -443,6 +792,39 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
         }
     }
 
+    /**
+     * Update the checked positions after an insert, remove or move without asking
+     * the adapter. The cost depends on the number of checked items only.
+     */
+    private void shiftCheckedPositions(int type, int start, int target, int count) {
+        if (checkedItemCount == 0 || checkStates == null)
+            return;
+        final int removed = positionShifter.shiftPositions(checkStates, type, start, target, count);
+        if (removed < 0)
+            return;
+
+        if (checkedIdStates != null) {
+            positionShifter.shiftIds(checkedIdStates, type, start, target, count);
+            if (choiceActionMode != null && multiChoiceModeCallback != null) {
+                for (int i = 0; i < positionShifter.getRemovedIdCount(); i++) {
+                    multiChoiceModeCallback.onItemCheckedStateChanged(choiceActionMode,
+                            positionShifter.getRemovedPosition(i), positionShifter.getRemovedId(i), false);
+                }
+            }
+        }
+
+        if (removed > 0) {
+            checkedItemCount -= removed;
+            if (choiceActionMode != null) {
+                if (checkedItemCount == 0) {
+                    choiceActionMode.finish();
+                } else {
+                    choiceActionMode.invalidate();
+                }
+            }
+        }
+    }
+
     private class AdapterDataSetObserver extends RecyclerView.AdapterDataObserver {
         @Override
         public void onChanged() {
@@ -451,17 +833,20 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
 
         @Override
         public void onItemRangeInserted(int positionStart, int itemCount) {
-            confirmCheckedPositions();
+            shiftCheckedPositions(CheckedPositionShifter.INSERT, positionStart, 0, itemCount);
         }
 
         @Override
         public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
-            confirmCheckedPositions();
+            if (itemCount == 1)
+                shiftCheckedPositions(CheckedPositionShifter.MOVE, fromPosition, toPosition, 1);
+            else
+                confirmCheckedPositions();
         }
 
         @Override
         public void onItemRangeRemoved(int positionStart, int itemCount) {
-            confirmCheckedPositions();
+            shiftCheckedPositions(CheckedPositionShifter.REMOVE, positionStart, 0, itemCount);
         }
     }
 
@@ -499,32 +884,80 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
         public void onItemCheckedStateChanged(ActionMode mode, int position, long id, boolean checked) {
             wrapped.onItemCheckedStateChanged(mode, position, id, checked);
         }
+
+        void onItemsCheckedStateChanged(ActionMode mode, int checked, int unchecked) {
+            if (wrapped instanceof BulkChoiceModeListener)
+                ((BulkChoiceModeListener) wrapped).onItemsCheckedStateChanged(mode, checked, unchecked);
+            else
+                mode.invalidate();
+        }
     }
 
+    /**
+     * Add a click listener. Listeners are called in the order they are added, a listener
+     * equal to one already added is ignored.
+     * @param listener The listener
+     */
     public void addOnItemClickListener(OnItemClickListener listener) {
-        if (listener != null)
-            onItemClickListeners.add(listener);
+        if (listener != null && indexOfListener(onItemClickListeners, listener) < 0)
+            onItemClickListeners = appendListener(onItemClickListeners, listener);
     }
 
     public void removeOnItemClickListener(OnItemClickListener listener) {
-        onItemClickListeners.remove(listener);
+        onItemClickListeners = removeListener(onItemClickListeners, listener);
     }
 
     private void onItemClick(View view, int position) {
-        for (OnItemClickListener l : onItemClickListeners)
-            l.onItemClick(this, view, position);
+        final OnItemClickListener[] listeners = onItemClickListeners;
+        for (int i = 0; i < listeners.length; i++)
+            listeners[i].onItemClick(this, view, position);
     }
 
     private void onItemLongClick(View view, int position) {
-        for (OnItemClickListener l : onItemClickListeners)
-            l.onItemLongClick(this, view, position);
+        final OnItemClickListener[] listeners = onItemClickListeners;
+        for (int i = 0; i < listeners.length; i++)
+            listeners[i].onItemLongClick(this, view, position);
+    }
+
+    /**
+     * Find a listener comparing with equals, so that equal listeners are added only once
+     */
+    private static <L> int indexOfListener(L[] listeners, L listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener))
+                return i;
+        }
+        return -1;
+    }
+
+    private static <L> L[] appendListener(L[] listeners, L listener) {
+        final L[] result = Arrays.copyOf(listeners, listeners.length + 1);
+        result[listeners.length] = listener;
+        return result;
+    }
+
+    private static <L> L[] removeListener(L[] listeners, L listener) {
+        final int index = indexOfListener(listeners, listener);
+        if (index < 0)
+            return listeners;
+        final L[] result = Arrays.copyOf(listeners, listeners.length - 1);
+        System.arraycopy(listeners, index + 1, result, index, listeners.length - index - 1);
+        return result;
     }
 
     private class ItemTouchListener extends GestureDetector.SimpleOnGestureListener implements RecyclerView.OnItemTouchListener {
 
         private GestureDetector gestureDetector;
         private boolean disallowedIntercept;
-        private List<OnItemTouchListener> wrapped = new ArrayList<>();
+        /**
+         * Copy on write, a listener can be added or removed while dispatching an event
+         */
+        private OnItemTouchListener[] wrapped = new OnItemTouchListener[0];
+        /**
+         * The listener that intercepted the current gesture, it receives the following events
+         */
+        @Nullable
+        private OnItemTouchListener intercepting;
 
         public ItemTouchListener() {
             disallowedIntercept = false;
@@ -533,35 +966,51 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
 
         public void addOnItemTouchListener(OnItemTouchListener l) {
             if (l != null)
-                wrapped.add(l);
+                wrapped = appendListener(wrapped, l);
         }
 
         public void removeOnItemTouchListener(OnItemTouchListener l) {
-            if (l != null)
-                wrapped.remove(l);
+            if (l != null) {
+                wrapped = removeListener(wrapped, l);
+                if (intercepting == l)
+                    intercepting = null;
+            }
         }
 
         @Override
         public boolean onInterceptTouchEvent(@NonNull RecyclerView recyclerView, @NonNull MotionEvent motionEvent) {
+            if (touchLatencyMonitor != null && motionEvent.getActionMasked() == MotionEvent.ACTION_DOWN)
+                touchLatencyMonitor.onTouchDown(motionEvent.getDownTime());
             if (!disallowedIntercept) {
                 gestureDetector.onTouchEvent(motionEvent);
             }
-            boolean intercept = false;
-            for (OnItemTouchListener w : wrapped)
-                intercept |= w.onInterceptTouchEvent(recyclerView, motionEvent);
-            return intercept;
+            intercepting = null;
+            final OnItemTouchListener[] listeners = wrapped;
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i].onInterceptTouchEvent(recyclerView, motionEvent)) {
+                    // The gesture is claimed, the following listeners are not called
+                    intercepting = listeners[i];
+                    return true;
+                }
+            }
+            return false;
         }
 
         @Override
         public void onTouchEvent(@NonNull RecyclerView recyclerView, @NonNull MotionEvent motionEvent) {
-            for (OnItemTouchListener w : wrapped)
-                w.onTouchEvent(recyclerView, motionEvent);
+            final OnItemTouchListener listener = intercepting;
+            if (listener != null)
+                listener.onTouchEvent(recyclerView, motionEvent);
+            final int action = motionEvent.getActionMasked();
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL)
+                intercepting = null;
         }
 
         @Override
         public void onRequestDisallowInterceptTouchEvent(boolean disallowIntercept) {
-            for (OnItemTouchListener w : wrapped)
-                w.onRequestDisallowInterceptTouchEvent(disallowedIntercept);
+            final OnItemTouchListener[] listeners = wrapped;
+            for (int i = 0; i < listeners.length; i++)
+                listeners[i].onRequestDisallowInterceptTouchEvent(disallowIntercept);
             this.disallowedIntercept = disallowIntercept;
         }
 
@@ -582,8 +1031,16 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
             view.setPressed(false);
             int position = getChildAdapterPosition(view);
             BaseViewHolder baseViewHolder = (BaseViewHolder) getChildViewHolder(view);
-            baseViewHolder.onClickListener(view);
+            final TouchLatencyMonitor monitor = touchLatencyMonitor;
+            if (monitor == null) {
+                baseViewHolder.onClickListener(view);
+                onItemClick(view, position);
+                return true;
+            }
+            final long start = monitor.begin(TouchLatencyMonitor.TAP);
+            onClickMeasured(monitor, baseViewHolder, view, position, false);
             onItemClick(view, position);
+            monitor.end(TouchLatencyMonitor.TAP, start);
             return true;
         }
 
@@ -594,11 +1051,37 @@ public class SmartRecycleView extends RecyclerView implements CheckableList {
                 return;
             int position = getChildAdapterPosition(view);
             BaseViewHolder baseViewHolder = (BaseViewHolder) getChildViewHolder(view);
-            baseViewHolder.onLongClickListener(view);
-            onItemLongClick(view, position);
+            final TouchLatencyMonitor monitor = touchLatencyMonitor;
+            if (monitor == null) {
+                baseViewHolder.onLongClickListener(view);
+                onItemLongClick(view, position);
+            } else {
+                final long start = monitor.begin(TouchLatencyMonitor.LONG_PRESS);
+                onClickMeasured(monitor, baseViewHolder, view, position, true);
+                onItemLongClick(view, position);
+                monitor.end(TouchLatencyMonitor.LONG_PRESS, start);
+            }
             view.setPressed(false);
         }
 
+        /**
+         * Call the click listener of the view holder, measured as a selection toggle if it
+         * changes the checked state of the item
+         */
+        private void onClickMeasured(TouchLatencyMonitor monitor, BaseViewHolder holder, View view, int position,
+                                     boolean longClick) {
+            final boolean wasChecked = position != NO_POSITION && isItemChecked(position);
+            final long start = monitor.begin(TouchLatencyMonitor.SELECTION_TOGGLE);
+            if (longClick)
+                holder.onLongClickListener(view);
+            else
+                holder.onClickListener(view);
+            if (position != NO_POSITION && isItemChecked(position) != wasChecked)
+                monitor.end(TouchLatencyMonitor.SELECTION_TOGGLE, start);
+            else
+                monitor.cancel();
+        }
+
         @Nullable
         private View getChildViewUnder(MotionEvent e) {
             return findChildViewUnder(e.getX(), e.getY());
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Selection of the best k items by score with a bounded min heap, without sorting
+ * all the candidates.
+ */
+final class TopK {
+
+    private TopK() {
+    }
+
+    /**
+     * Select the k best candidates
+     * @param candidates The sorted positions of the candidates
+     * @param scores The scores, indexed by position
+     * @param k The maximum number of results
+     * @return The selected positions, ordered by score descending and by position for equal scores
+     */
+    @NonNull
+    static int[] select(@NonNull int[] candidates, @NonNull int[] scores, int k) {
+        final int size = Math.min(k, candidates.length);
+        final int[] heap = new int[size];
+        int n = 0;
+        for (int position : candidates) {
+            if (n < size) {
+                heap[n] = position;
+                siftUp(heap, scores, n++);
+            } else if (size > 0 && worse(heap[0], position, scores)) {
+                heap[0] = position;
+                siftDown(heap, scores, 0, n);
+            }
+        }
+        // Extract from the worst to the best
+        final int[] result = new int[n];
+        for (int i = n - 1; i >= 0; i--) {
+            result[i] = heap[0];
+            heap[0] = heap[i];
+            siftDown(heap, scores, 0, i);
+        }
+        return result;
+    }
+
+    /**
+     * @return True if the item at position a is worse than the one at position b
+     */
+    private static boolean worse(int a, int b, int[] scores) {
+        return scores[a] < scores[b] || (scores[a] == scores[b] && a > b);
+    }
+
+    private static void siftUp(int[] heap, int[] scores, int index) {
+        final int value = heap[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (!worse(value, heap[parent], scores))
+                break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private static void siftDown(int[] heap, int[] scores, int index, int size) {
+        final int value = heap[index];
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && worse(heap[child + 1], heap[child], scores))
+                child++;
+            if (!worse(heap[child], value, scores))
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import android.os.SystemClock;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+
+import androidx.annotation.IntDef;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.os.TraceCompat;
+
+/**
+ * Opt-in measure of the latency of the touch gestures of a {@link SmartRecycleView}, see
+ * {@link SmartRecycleView#setTouchLatencyMonitor(TouchLatencyMonitor)}. For each gesture it
+ * records the time from ACTION_DOWN to the end of the callbacks in a histogram, so that
+ * percentiles can be collected in production. Optionally it notifies a listener and
+ * wraps the callbacks in trace sections.
+ */
+@MainThread
+public final class TouchLatencyMonitor {
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({TAP, LONG_PRESS, SELECTION_TOGGLE, DRAG_START})
+    @interface Gesture {
+    }
+    public static final int TAP = 0;
+    public static final int LONG_PRESS = 1;
+    public static final int SELECTION_TOGGLE = 2;
+    public static final int DRAG_START = 3;
+
+    private static final String[] SECTION_NAMES = {"SmartRecycleView:tap", "SmartRecycleView:longPress",
+            "SmartRecycleView:selectionToggle", "SmartRecycleView:dragStart"};
+    /**
+     * Four buckets for each power of two of microseconds, the error of a percentile is below 25%
+     */
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 32 * SUB_BUCKETS;
+
+    /**
+     * Listener notified of every measured gesture
+     */
+    public interface Listener {
+        /**
+         * @param gesture The gesture
+         * @param downTime The time of ACTION_DOWN, in the {@link SystemClock#uptimeMillis()} time base
+         * @param latencyMicros The time from ACTION_DOWN to the end of the callbacks
+         * @param callbackNanos The time spent in the callbacks
+         */
+        void onGesture(@Gesture int gesture, long downTime, long latencyMicros, long callbackNanos);
+    }
+
+    private final long[][] histograms = new long[SECTION_NAMES.length][BUCKETS];
+    private final long[] counts = new long[SECTION_NAMES.length];
+    @Nullable
+    private Listener listener;
+    private boolean traceEnabled;
+    private long downTime;
+
+    public void setListener(@Nullable Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Wrap the measured callbacks in trace sections named SmartRecycleView:&lt;gesture&gt;
+     * @param enabled True to enable the sections
+     */
+    public void setTraceEnabled(boolean enabled) {
+        traceEnabled = enabled;
+    }
+
+    /**
+     * @return The number of gestures measured
+     */
+    public long getCount(@Gesture int gesture) {
+        return counts[gesture];
+    }
+
+    /**
+     * Return a percentile of the latency of a gesture
+     * @param gesture The gesture
+     * @param percentile The percentile, between 0 and 100
+     * @return The upper bound of the histogram bucket containing the percentile in microseconds,
+     * 0 if there are no measures
+     */
+    public long getPercentileMicros(@Gesture int gesture, double percentile) {
+        final long count = counts[gesture];
+        if (count == 0)
+            return 0;
+        final long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        final long[] histogram = histograms[gesture];
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += histogram[i];
+            if (cumulative >= rank)
+                return bucketUpperBound(i);
+        }
+        return bucketUpperBound(BUCKETS - 1);
+    }
+
+    /**
+     * Return a copy of the histogram of a gesture
+     * @return The number of gestures in each bucket, see {@link #getBucketUpperBoundMicros(int)}
+     */
+    @NonNull
+    public long[] getHistogram(@Gesture int gesture) {
+        return histograms[gesture].clone();
+    }
+
+    /**
+     * @return The highest latency in microseconds counted in a bucket of the histogram
+     */
+    public static long getBucketUpperBoundMicros(int bucket) {
+        return bucketUpperBound(bucket);
+    }
+
+    public void reset() {
+        for (int i = 0; i < histograms.length; i++) {
+            Arrays.fill(histograms[i], 0);
+            counts[i] = 0;
+        }
+    }
+
+    /**
+     * Record the start of a drag. It's called by
+     * {@link com.balda.smartrecyclerview.touchhelper.TouchHelperCallback}, custom item touch helper
+     * callbacks can call it when the drag state is selected.
+     */
+    public void onDragStarted() {
+        end(DRAG_START, begin(DRAG_START));
+    }
+
+    void onTouchDown(long downTime) {
+        this.downTime = downTime;
+    }
+
+    /**
+     * Start measuring the callbacks of a gesture
+     * @return The start time to pass to {@link #end(int, long)}
+     */
+    long begin(@Gesture int gesture) {
+        if (traceEnabled)
+            TraceCompat.beginSection(SECTION_NAMES[gesture]);
+        return System.nanoTime();
+    }
+
+    void end(@Gesture int gesture, long start) {
+        if (traceEnabled)
+            TraceCompat.endSection();
+        record(gesture, start);
+    }
+
+    /**
+     * Discard a measure started with {@link #begin(int)}
+     */
+    void cancel() {
+        if (traceEnabled)
+            TraceCompat.endSection();
+    }
+
+    private void record(@Gesture int gesture, long start) {
+        final long callbackNanos = System.nanoTime() - start;
+        // The event times have a resolution of a millisecond
+        final long latencyMicros = Math.max(0, SystemClock.uptimeMillis() - downTime) * 1000;
+        histograms[gesture][bucketOf(latencyMicros)]++;
+        counts[gesture]++;
+        if (listener != null)
+            listener.onGesture(gesture, downTime, latencyMicros, callbackNanos);
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+        final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        final int sub = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return Math.min((exponent - 1) * SUB_BUCKETS + sub, BUCKETS - 1);
+    }
+
+    private static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        final int exponent = bucket / SUB_BUCKETS + 1;
+        final long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+        return lower + (1L << (exponent - 2)) - 1;
+    }
+}
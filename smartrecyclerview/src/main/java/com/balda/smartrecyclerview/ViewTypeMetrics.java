@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Counters of the view holders of a view type, see
+ * {@link RecyclerArrayAdapter#setViewTypeMetricsEnabled(boolean)}. The instances returned by
+ * {@link RecyclerArrayAdapter#getViewTypeMetrics()} are snapshots.
+ */
+public final class ViewTypeMetrics {
+
+    private final int viewType;
+    final String createSectionName;
+    final String bindSectionName;
+    private long createCount;
+    private long createTimeNanos;
+    private long inflateCount;
+    private long inflateTimeNanos;
+    private long bindCount;
+    private long bindTimeNanos;
+    private long maxBindTimeNanos;
+    private long selectionRebindCount;
+    private long dataRebindCount;
+
+    ViewTypeMetrics(int viewType) {
+        this.viewType = viewType;
+        createSectionName = "RecyclerArrayAdapter:create:" + viewType;
+        bindSectionName = "RecyclerArrayAdapter:bind:" + viewType;
+    }
+
+    private ViewTypeMetrics(ViewTypeMetrics other) {
+        viewType = other.viewType;
+        createSectionName = other.createSectionName;
+        bindSectionName = other.bindSectionName;
+        createCount = other.createCount;
+        createTimeNanos = other.createTimeNanos;
+        inflateCount = other.inflateCount;
+        inflateTimeNanos = other.inflateTimeNanos;
+        bindCount = other.bindCount;
+        bindTimeNanos = other.bindTimeNanos;
+        maxBindTimeNanos = other.maxBindTimeNanos;
+        selectionRebindCount = other.selectionRebindCount;
+        dataRebindCount = other.dataRebindCount;
+    }
+
+    ViewTypeMetrics copy() {
+        return new ViewTypeMetrics(this);
+    }
+
+    void recordCreate(long nanos) {
+        createCount++;
+        createTimeNanos += nanos;
+    }
+
+    void recordInflate(long nanos) {
+        inflateCount++;
+        inflateTimeNanos += nanos;
+    }
+
+    /**
+     * @param selectionOnly True if only the checked state was bound
+     * @param partial True if the bind had data payloads
+     */
+    void recordBind(long nanos, boolean selectionOnly, boolean partial) {
+        if (selectionOnly)
+            selectionRebindCount++;
+        else if (partial)
+            dataRebindCount++;
+        bindCount++;
+        bindTimeNanos += nanos;
+        if (nanos > maxBindTimeNanos)
+            maxBindTimeNanos = nanos;
+    }
+
+    public int getViewType() {
+        return viewType;
+    }
+
+    /**
+     * @return The number of view holders created while the metrics were enabled, including
+     * the prewarmed ones
+     */
+    public long getCreateCount() {
+        return createCount;
+    }
+
+    /**
+     * @return The total time spent in
+     * {@link RecyclerArrayAdapter#createItemViewHolder(android.view.ViewGroup, int)}
+     */
+    public long getCreateTimeNanos() {
+        return createTimeNanos;
+    }
+
+    /**
+     * @return The number of item views inflated with
+     * {@link RecyclerArrayAdapter#inflateItemView(android.view.ViewGroup, int, int)}
+     */
+    public long getInflateCount() {
+        return inflateCount;
+    }
+
+    /**
+     * @return The total time spent inflating item views with
+     * {@link RecyclerArrayAdapter#inflateItemView(android.view.ViewGroup, int, int)}
+     */
+    public long getInflateTimeNanos() {
+        return inflateTimeNanos;
+    }
+
+    /**
+     * @return The number of binds, full and partial
+     */
+    public long getBindCount() {
+        return bindCount;
+    }
+
+    public long getBindTimeNanos() {
+        return bindTimeNanos;
+    }
+
+    public long getMaxBindTimeNanos() {
+        return maxBindTimeNanos;
+    }
+
+    /**
+     * @return The number of binds updating only the checked state
+     */
+    public long getSelectionRebindCount() {
+        return selectionRebindCount;
+    }
+
+    /**
+     * @return The number of partial binds caused by a change of the data, with payloads
+     */
+    public long getDataRebindCount() {
+        return dataRebindCount;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "ViewTypeMetrics{viewType=" + viewType + ", createCount=" + createCount +
+                ", createTimeNanos=" + createTimeNanos +
+                ", inflateCount=" + inflateCount + ", inflateTimeNanos=" + inflateTimeNanos +
+                ", bindCount=" + bindCount + ", bindTimeNanos=" + bindTimeNanos +
+                ", maxBindTimeNanos=" + maxBindTimeNanos + ", selectionRebindCount=" + selectionRebindCount +
+                ", dataRebindCount=" + dataRebindCount + "}";
+    }
+}
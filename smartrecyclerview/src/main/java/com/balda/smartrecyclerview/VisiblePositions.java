@@ -0,0 +1,510 @@
+/*
+ * Copyright 2018 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.BatchingListUpdateCallback;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Positions in the unfiltered items of the items shown by an active filter, with their match
+ * spans. Unless the results are ranked by score, the positions are sorted.
+ * The positions are kept in chunks, each with an offset added to all its positions: showing
+ * or hiding an item only moves the entries of one chunk, and shifting the unfiltered positions
+ * from a given one updates the entries of one chunk and the offsets of the following ones.
+ * Ranked positions are not sorted, so a shift updates all their entries, in place.
+ * The arrays passed to the constructor and the ones returned by {@link #toArray()} are never
+ * modified, they can be shared with the filter results and the cache of the search index.
+ */
+final class VisiblePositions {
+
+    private static final int CHUNK_CAPACITY = 512;
+
+    /**
+     * Score of an unfiltered item against the active constraint
+     */
+    interface Scorer {
+        int score(int sourcePosition);
+    }
+
+    private final boolean ranked;
+    private final boolean hasSpans;
+    private int size;
+    /**
+     * Positions and spans as arrays, null after a change until requested again
+     */
+    @Nullable
+    private int[] positions;
+    @Nullable
+    private int[][] spans;
+    /**
+     * Chunks of positions without their offsets, built at the first change
+     */
+    @Nullable
+    private int[][] chunks;
+    @Nullable
+    private int[][][] chunkSpans;
+    private int[] chunkSizes;
+    private int[] chunkOffsets;
+    private int chunkCount;
+    /**
+     * Chunk and index in the chunk found by the last {@link #locate(int)}
+     */
+    private int foundChunk;
+    private int foundIndex;
+
+    /**
+     * @param positions The positions of the shown items, not modified
+     * @param spans The match spans of the shown items, null if not available
+     * @param ranked True if the positions are ordered by score
+     */
+    VisiblePositions(@NonNull int[] positions, @Nullable int[][] spans, boolean ranked) {
+        this.positions = positions;
+        this.spans = spans;
+        this.ranked = ranked;
+        hasSpans = spans != null;
+        size = positions.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isRanked() {
+        return ranked;
+    }
+
+    boolean hasSpans() {
+        return hasSpans;
+    }
+
+    int get(int index) {
+        if (positions != null)
+            return positions[index];
+        locate(index);
+        return chunks[foundChunk][foundIndex] + chunkOffsets[foundChunk];
+    }
+
+    @Nullable
+    int[] getSpans(int index) {
+        if (!hasSpans)
+            return null;
+        if (spans != null)
+            return spans[index];
+        locate(index);
+        return chunkSpans[foundChunk][foundIndex];
+    }
+
+    /**
+     * @return The positions as an array, it must not be modified
+     */
+    @NonNull
+    int[] toArray() {
+        if (positions == null) {
+            final int[] array = new int[size];
+            final int[][] spanArray = hasSpans ? new int[size][] : null;
+            int n = 0;
+            for (int c = 0; c < chunkCount; c++) {
+                final int offset = chunkOffsets[c];
+                for (int i = 0; i < chunkSizes[c]; i++) {
+                    array[n + i] = chunks[c][i] + offset;
+                }
+                if (spanArray != null)
+                    System.arraycopy(chunkSpans[c], 0, spanArray, n, chunkSizes[c]);
+                n += chunkSizes[c];
+            }
+            positions = array;
+            spans = spanArray;
+        }
+        return positions;
+    }
+
+    /**
+     * @return The match spans as an array, null if not available. It must not be modified.
+     */
+    @Nullable
+    int[][] spansToArray() {
+        toArray();
+        return spans;
+    }
+
+    /**
+     * Split the arrays in chunks half full before the first change
+     */
+    private void edit() {
+        if (chunks == null) {
+            final int half = CHUNK_CAPACITY / 2;
+            final int count = Math.max(1, (size + half - 1) / half);
+            chunks = new int[count][];
+            chunkSpans = hasSpans ? new int[count][][] : null;
+            chunkSizes = new int[count];
+            chunkOffsets = new int[count];
+            for (int c = 0; c < count; c++) {
+                final int start = c * half;
+                final int length = Math.min(half, size - start);
+                chunks[c] = new int[CHUNK_CAPACITY];
+                System.arraycopy(positions, start, chunks[c], 0, length);
+                if (chunkSpans != null) {
+                    chunkSpans[c] = new int[CHUNK_CAPACITY][];
+                    System.arraycopy(spans, start, chunkSpans[c], 0, length);
+                }
+                chunkSizes[c] = length;
+            }
+            chunkCount = count;
+        }
+        positions = null;
+        spans = null;
+    }
+
+    private void locate(int index) {
+        int c = 0;
+        while (index >= chunkSizes[c] && c < chunkCount - 1) {
+            index -= chunkSizes[c];
+            c++;
+        }
+        foundChunk = c;
+        foundIndex = index;
+    }
+
+    /**
+     * Show an item
+     * @param index The index among the shown items
+     * @param sourcePosition The position of the item in the unfiltered items
+     * @param itemSpans The match spans of the item
+     */
+    void insert(int index, int sourcePosition, @Nullable int[] itemSpans) {
+        edit();
+        locate(index);
+        if (chunkSizes[foundChunk] == CHUNK_CAPACITY) {
+            split(foundChunk);
+            locate(index);
+        }
+        final int c = foundChunk;
+        final int i = foundIndex;
+        final int length = chunkSizes[c] - i;
+        System.arraycopy(chunks[c], i, chunks[c], i + 1, length);
+        chunks[c][i] = sourcePosition - chunkOffsets[c];
+        if (chunkSpans != null) {
+            System.arraycopy(chunkSpans[c], i, chunkSpans[c], i + 1, length);
+            chunkSpans[c][i] = itemSpans;
+        }
+        chunkSizes[c]++;
+        size++;
+    }
+
+    private void split(int c) {
+        if (chunkCount == chunks.length) {
+            final int capacity = chunkCount * 2;
+            chunks = Arrays.copyOf(chunks, capacity);
+            if (chunkSpans != null)
+                chunkSpans = Arrays.copyOf(chunkSpans, capacity);
+            chunkSizes = Arrays.copyOf(chunkSizes, capacity);
+            chunkOffsets = Arrays.copyOf(chunkOffsets, capacity);
+        }
+        final int moved = c + 1;
+        System.arraycopy(chunks, moved, chunks, moved + 1, chunkCount - moved);
+        System.arraycopy(chunkSizes, moved, chunkSizes, moved + 1, chunkCount - moved);
+        System.arraycopy(chunkOffsets, moved, chunkOffsets, moved + 1, chunkCount - moved);
+        final int half = chunkSizes[c] / 2;
+        chunks[moved] = new int[CHUNK_CAPACITY];
+        System.arraycopy(chunks[c], half, chunks[moved], 0, chunkSizes[c] - half);
+        if (chunkSpans != null) {
+            System.arraycopy(chunkSpans, moved, chunkSpans, moved + 1, chunkCount - moved);
+            chunkSpans[moved] = new int[CHUNK_CAPACITY][];
+            System.arraycopy(chunkSpans[c], half, chunkSpans[moved], 0, chunkSizes[c] - half);
+            Arrays.fill(chunkSpans[c], half, chunkSizes[c], null);
+        }
+        chunkSizes[moved] = chunkSizes[c] - half;
+        chunkOffsets[moved] = chunkOffsets[c];
+        chunkSizes[c] = half;
+        chunkCount++;
+    }
+
+    /**
+     * Hide an item
+     * @param index The index among the shown items
+     */
+    void remove(int index) {
+        edit();
+        locate(index);
+        final int c = foundChunk;
+        final int i = foundIndex;
+        final int length = chunkSizes[c] - i - 1;
+        System.arraycopy(chunks[c], i + 1, chunks[c], i, length);
+        if (chunkSpans != null) {
+            System.arraycopy(chunkSpans[c], i + 1, chunkSpans[c], i, length);
+            chunkSpans[c][chunkSizes[c] - 1] = null;
+        }
+        size--;
+        if (--chunkSizes[c] == 0 && chunkCount > 1) {
+            System.arraycopy(chunks, c + 1, chunks, c, chunkCount - c - 1);
+            if (chunkSpans != null)
+                System.arraycopy(chunkSpans, c + 1, chunkSpans, c, chunkCount - c - 1);
+            System.arraycopy(chunkSizes, c + 1, chunkSizes, c, chunkCount - c - 1);
+            System.arraycopy(chunkOffsets, c + 1, chunkOffsets, c, chunkCount - c - 1);
+            chunkCount--;
+        }
+    }
+
+    /**
+     * Add delta to the positions not lower than from, after unfiltered items are inserted or removed
+     */
+    void shiftSource(int from, int delta) {
+        if (size == 0)
+            return;
+        edit();
+        int c = 0;
+        if (!ranked) {
+            // The chunks before the one of the first shifted position are left as they are
+            while (c < chunkCount && (chunkSizes[c] == 0 || chunks[c][chunkSizes[c] - 1] + chunkOffsets[c] < from))
+                c++;
+            if (c == chunkCount)
+                return;
+            shiftEntries(c, from, delta);
+            for (c++; c < chunkCount; c++) {
+                chunkOffsets[c] += delta;
+            }
+            return;
+        }
+        for (; c < chunkCount; c++) {
+            shiftEntries(c, from, delta);
+        }
+    }
+
+    private void shiftEntries(int c, int from, int delta) {
+        final int[] chunk = chunks[c];
+        final int stored = from - chunkOffsets[c];
+        for (int i = 0; i < chunkSizes[c]; i++) {
+            if (chunk[i] >= stored)
+                chunk[i] += delta;
+        }
+    }
+
+    /**
+     * Move a shown item together with its unfiltered item. The relative order of the other
+     * items is unchanged, so sorted positions stay sorted.
+     * @param fromIndex The index of the item among the shown ones
+     * @param toIndex The new index among the shown ones
+     * @param toSource The new position in the unfiltered items
+     */
+    void move(int fromIndex, int toIndex, int toSource) {
+        final int fromSource = get(fromIndex);
+        final int[] itemSpans = getSpans(fromIndex);
+        remove(fromIndex);
+        shiftSource(fromSource + 1, -1);
+        shiftSource(toSource, 1);
+        insert(toIndex, toSource, itemSpans);
+    }
+
+    /**
+     * @return The index among the sorted positions where the given one would be inserted
+     */
+    int sortedIndex(int sourcePosition) {
+        if (positions != null) {
+            final int index = Arrays.binarySearch(positions, sourcePosition);
+            return index >= 0 ? index : -index - 1;
+        }
+        int index = 0;
+        int c = 0;
+        while (c < chunkCount - 1 && chunks[c][chunkSizes[c] - 1] + chunkOffsets[c] < sourcePosition) {
+            index += chunkSizes[c];
+            c++;
+        }
+        final int found = Arrays.binarySearch(chunks[c], 0, chunkSizes[c], sourcePosition - chunkOffsets[c]);
+        return index + (found >= 0 ? found : -found - 1);
+    }
+
+    /**
+     * Binary search the index of a new result among the ranked ones, by score and then
+     * by position. The scores of the shown items are calculated again, only for the probed ones.
+     */
+    int rankedIndex(int sourcePosition, int score, @NonNull Scorer scorer) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final int position = get(mid);
+            final int midScore = scorer.score(position);
+            if (midScore > score || (midScore == score && position < sourcePosition))
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Merge new results with the ranked ones, by score and then by position. The shown items
+     * before the place of the best new result are copied without being matched again.
+     * @param added The positions of the new results, in source order, after the shown ones
+     * @param addedScores The scores of the new results
+     * @param addedSpans The match spans of the new results, null if not available
+     * @param count The number of new results
+     * @param maxResults The maximum number of results, 0 for no limit
+     * @param callback Notified of the results inserted and of the ones pushed out
+     * @return The first index changed, -1 if no new result is shown
+     */
+    int mergeRanked(int[] added, final int[] addedScores, @Nullable int[][] addedSpans, int count, int maxResults,
+                    @NonNull Scorer scorer, @NonNull ListUpdateCallback callback) {
+        final Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        // Stable, so equal scores stay in source order
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return addedScores[o1] > addedScores[o2] ? -1 : (addedScores[o1] == addedScores[o2] ? 0 : 1);
+            }
+        });
+        final int limit = maxResults > 0 ? Math.min(maxResults, size + count) : size + count;
+        final int first = rankedIndex(added[order[0]], addedScores[order[0]], scorer);
+        if (first >= limit)
+            return -1;
+        final int[] oldPositions = toArray();
+        final int[][] oldSpans = spans;
+        final int[] merged = Arrays.copyOf(oldPositions, limit);
+        final int[][] mergedSpans = hasSpans ? Arrays.copyOf(oldSpans, limit) : null;
+        int i = first;
+        int j = 0;
+        // The new positions are after the shown ones, so these go first on equal scores
+        int score = i < size ? scorer.score(oldPositions[i]) : 0;
+        for (int n = first; n < limit; n++) {
+            if (j < count && (i == size || addedScores[order[j]] > score)) {
+                final int entry = order[j++];
+                merged[n] = added[entry];
+                if (mergedSpans != null)
+                    mergedSpans[n] = addedSpans != null ? addedSpans[entry] : null;
+                callback.onInserted(n, 1);
+            } else {
+                merged[n] = oldPositions[i];
+                if (mergedSpans != null)
+                    mergedSpans[n] = oldSpans[i];
+                i++;
+                // Once all the new results are placed, the others are copied without matching
+                if (j < count && i < size)
+                    score = scorer.score(oldPositions[i]);
+            }
+        }
+        // The worst results are pushed out
+        if (i < size)
+            callback.onRemoved(limit, size - i);
+        positions = merged;
+        spans = mergedSpans;
+        size = limit;
+        chunks = null;
+        chunkSpans = null;
+        return first;
+    }
+
+    /**
+     * Calculate the updates to go from a visible subset of the source list to another one.
+     * Both subsets keep the order of the source list, so a linear merge is enough.
+     * Items visible in both with different match spans are notified as changed.
+     * @param oldPositions The sorted positions currently visible, null for all
+     * @param oldSpans The match spans of the visible items, null if not available
+     * @param newPositions The sorted positions to show, null for all
+     * @param newSpans The match spans of the items to show, null if not available
+     * @param sourceSize The size of the source list
+     * @return The updates
+     */
+    @NonNull
+    static ListUpdateRecorder diff(@Nullable int[] oldPositions, @Nullable int[][] oldSpans,
+                                   @Nullable int[] newPositions, @Nullable int[][] newSpans, int sourceSize) {
+        final ListUpdateRecorder recorder = new ListUpdateRecorder();
+        final BatchingListUpdateCallback batching = new BatchingListUpdateCallback(recorder);
+        final int oldSize = oldPositions != null ? oldPositions.length : sourceSize;
+        final int newSize = newPositions != null ? newPositions.length : sourceSize;
+        int i = 0;
+        int j = 0;
+        // Position in the list being updated
+        int position = 0;
+        while (i < oldSize || j < newSize) {
+            final int oldPosition = i < oldSize ? (oldPositions != null ? oldPositions[i] : i) : Integer.MAX_VALUE;
+            final int newPosition = j < newSize ? (newPositions != null ? newPositions[j] : j) : Integer.MAX_VALUE;
+            if (oldPosition == newPosition) {
+                if (!sameSpans(oldSpans, i, newSpans, j))
+                    batching.onChanged(position, 1, BaseViewHolder.PAYLOAD_MATCH_SPANS);
+                position++;
+                i++;
+                j++;
+            } else if (oldPosition < newPosition) {
+                batching.onRemoved(position, 1);
+                i++;
+            } else {
+                batching.onInserted(position, 1);
+                position++;
+                j++;
+            }
+        }
+        batching.dispatchLastEvent();
+        return recorder;
+    }
+
+    private static boolean sameSpans(@Nullable int[][] oldSpans, int oldIndex, @Nullable int[][] newSpans,
+                                     int newIndex) {
+        final int[] a = oldSpans != null ? oldSpans[oldIndex] : null;
+        final int[] b = newSpans != null ? newSpans[newIndex] : null;
+        return Arrays.equals(a, b);
+    }
+
+    /**
+     * Calculate the updates to go from the visible items to the new ones when the order
+     * is not the one of the source list, using the diff pipeline.
+     */
+    @NonNull
+    static ListUpdateRecorder diffRanked(@Nullable final int[] oldPositions, @Nullable final int[][] oldSpans,
+                                         @Nullable final int[] newPositions, @Nullable final int[][] newSpans,
+                                         final int sourceSize) {
+        final DiffUtil.Callback callback = new DiffUtil.Callback() {
+            @Override
+            public int getOldListSize() {
+                return oldPositions != null ? oldPositions.length : sourceSize;
+            }
+
+            @Override
+            public int getNewListSize() {
+                return newPositions != null ? newPositions.length : sourceSize;
+            }
+
+            @Override
+            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                return (oldPositions != null ? oldPositions[oldItemPosition] : oldItemPosition) ==
+                        (newPositions != null ? newPositions[newItemPosition] : newItemPosition);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                return sameSpans(oldSpans, oldItemPosition, newSpans, newItemPosition);
+            }
+
+            @Override
+            public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+                return BaseViewHolder.PAYLOAD_MATCH_SPANS;
+            }
+        };
+        final ListUpdateRecorder recorder = new ListUpdateRecorder();
+        DiffPipeline.calculate(callback, true).dispatchUpdatesTo(recorder);
+        return recorder;
+    }
+}
@@ -17,6 +17,9 @@
  */
 package com.balda.smartrecyclerview.touchhelper;
 
+import com.balda.smartrecyclerview.SmartRecycleView;
+import com.balda.smartrecyclerview.TouchLatencyMonitor;
+
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.recyclerview.widget.ItemTouchHelper;
 
@@ -75,6 +78,13 @@ public class TouchHelperCallback extends ItemTouchHelper.SimpleCallback {
     @Override
     public void onSelectedChanged(RecyclerView.ViewHolder viewHolder, int actionState) {
         // We only want the active item
+        if (actionState == ItemTouchHelper.ACTION_STATE_DRAG && viewHolder != null &&
+                viewHolder.itemView.getParent() instanceof SmartRecycleView) {
+            final TouchLatencyMonitor monitor = ((SmartRecycleView) viewHolder.itemView.getParent())
+                    .getTouchLatencyMonitor();
+            if (monitor != null)
+                monitor.onDragStarted();
+        }
         if (actionState != ItemTouchHelper.ACTION_STATE_IDLE) {
             isMoving = true;
             if (viewHolder instanceof ItemTouchHelperViewHolder) {
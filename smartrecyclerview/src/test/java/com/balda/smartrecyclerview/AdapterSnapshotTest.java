@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class AdapterSnapshotTest {
+
+    private static final ItemSerializer<String> UTF = new ItemSerializer<String>() {
+        @Override
+        public void write(@NonNull String item, @NonNull DataOutput out) throws IOException {
+            out.writeUTF(item);
+        }
+
+        @NonNull
+        @Override
+        public String read(@NonNull DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("snapshot", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        final List<String> items = Arrays.asList("alpha", "", "gamma \u00e8");
+        AdapterSnapshot.write(file, items, UTF, 12, -34);
+        final AdapterSnapshot<String> snapshot = AdapterSnapshot.read(file, UTF);
+        assertNotNull(snapshot);
+        assertEquals(items, snapshot.getItems());
+        assertEquals(12, snapshot.getAnchorPosition());
+        assertEquals(-34, snapshot.getAnchorOffset());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void missingFile() {
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+        assertNull(AdapterSnapshot.read(file, UTF));
+    }
+
+    @Test
+    public void truncated() throws IOException {
+        AdapterSnapshot.write(file, Arrays.asList("alpha", "beta"), UTF, 0, 0);
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 2);
+        } finally {
+            raf.close();
+        }
+        assertNull(AdapterSnapshot.read(file, UTF));
+    }
+
+    @Test
+    public void otherFormat() throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.writeInt(0x12345678);
+            raf.writeInt(1);
+        } finally {
+            raf.close();
+        }
+        assertNull(AdapterSnapshot.read(file, UTF));
+    }
+
+    @Test
+    public void serializerErrorIsNotHidden() throws IOException {
+        AdapterSnapshot.write(file, Collections.singletonList("alpha"), UTF, 0, 0);
+        try {
+            AdapterSnapshot.read(file, new ItemSerializer<String>() {
+                @Override
+                public void write(@NonNull String item, @NonNull DataOutput out) {
+                }
+
+                @NonNull
+                @Override
+                public String read(@NonNull DataInput in) {
+                    throw new IllegalStateException("bug");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("bug", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchRecorderTest {
+
+    @Test
+    public void recordsInOrder() {
+        final ListUpdateRecorder recorder = new ListUpdateRecorder();
+        recorder.onInserted(0, 2);
+        recorder.onRemoved(5, 1);
+        recorder.onMoved(3, 1);
+        recorder.onChanged(4, 2, null);
+        // More operations than the initial capacity, payloads start after some changes without
+        for (int i = 0; i < 20; i++) {
+            recorder.onChanged(i, 1, i % 2 == 0 ? "p" + i : null);
+        }
+        final RecordingCallback callback = new RecordingCallback();
+        recorder.dispatchTo(callback);
+        assertEquals(24, callback.events.size());
+        assertEquals(Arrays.asList("inserted 0 2", "removed 5 1", "moved 3 1", "changed 4 2 null",
+                "changed 0 1 p0", "changed 1 1 null"), callback.events.subList(0, 6));
+        assertEquals("changed 19 1 null", callback.events.get(23));
+        assertEquals("changed 18 1 p18", callback.events.get(22));
+    }
+
+    @Test
+    public void resetStopsRecording() {
+        final RecyclerArrayAdapter.BatchRecorder batch = new RecyclerArrayAdapter.BatchRecorder();
+        batch.onInserted(0, 3);
+        batch.reset = true;
+        batch.onRemoved(0, 1);
+        batch.onChanged(0, 1, null);
+        final RecordingCallback callback = new RecordingCallback();
+        batch.updates.dispatchTo(callback);
+        assertEquals(Collections.singletonList("inserted 0 3"), callback.events);
+    }
+}
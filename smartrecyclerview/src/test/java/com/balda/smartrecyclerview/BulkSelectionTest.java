@@ -0,0 +1,167 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkSelectionTest {
+
+    /**
+     * Ids of the items are their positions plus 100, the ones below {@link #firstKnown}
+     * are placeholders
+     */
+    private static final class Ids implements BulkSelection.ItemIds {
+        int firstKnown;
+
+        @Override
+        public boolean isItemIdKnown(int position) {
+            return position >= firstKnown;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position + 100;
+        }
+    }
+
+    @Test
+    public void rangeWithoutIds() {
+        final BitSet checkStates = new BitSet();
+        checkStates.set(2);
+        checkStates.set(8);
+        final BulkSelection selection = new BulkSelection();
+
+        assertTrue(selection.apply(checkStates, null, null, 1, 5, BulkSelection.CHECK, null));
+        assertEquals(3, selection.getChecked());
+        assertEquals(0, selection.getUnchecked());
+        assertEquals(1, selection.getFirstChanged());
+        assertEquals(4, selection.getLastChanged());
+        assertEquals(5, checkStates.cardinality());
+
+        assertTrue(selection.apply(checkStates, null, null, 3, 10, BulkSelection.INVERT, null));
+        assertEquals(4, selection.getChecked());
+        assertEquals(3, selection.getUnchecked());
+        assertEquals("{1, 2, 5, 6, 7, 9}", checkStates.toString());
+
+        assertFalse(selection.apply(checkStates, null, null, 3, 5, BulkSelection.UNCHECK, null));
+        assertEquals(-1, selection.getFirstChanged());
+        assertFalse(selection.apply(checkStates, null, null, 5, 5, BulkSelection.CHECK, null));
+    }
+
+    @Test
+    public void predicateKeepsTheChecked() {
+        final BitSet checkStates = new BitSet();
+        checkStates.set(1);
+        final BulkSelection selection = new BulkSelection();
+        assertTrue(selection.apply(checkStates, null, null, 0, 10, BulkSelection.PREDICATE,
+                new CheckableList.PositionPredicate() {
+                    @Override
+                    public boolean apply(int position) {
+                        return position % 3 == 0;
+                    }
+                }));
+        assertEquals("{0, 1, 3, 6, 9}", checkStates.toString());
+        assertEquals(4, selection.getChecked());
+        assertEquals(0, selection.getFirstChanged());
+        assertEquals(9, selection.getLastChanged());
+    }
+
+    @Test
+    public void placeholdersAreNotChecked() {
+        final BitSet checkStates = new BitSet();
+        final LongIntMap checkedIds = new LongIntMap();
+        // A placeholder checked before its page was evicted keeps its last id
+        checkStates.set(1);
+        checkedIds.put(42, 1);
+        final Ids ids = new Ids();
+        ids.firstKnown = 3;
+        final BulkSelection selection = new BulkSelection();
+
+        assertTrue(selection.apply(checkStates, checkedIds, ids, 0, 6, BulkSelection.INVERT, null));
+        assertEquals("{3, 4, 5}", checkStates.toString());
+        assertEquals(3, selection.getChecked());
+        assertEquals(1, selection.getUnchecked());
+        assertEquals(1, selection.getFirstChanged());
+        assertEquals(3, checkedIds.size());
+        assertEquals(-1, checkedIds.get(42, -1));
+
+        assertFalse(selection.apply(checkStates, checkedIds, ids, 0, 3, BulkSelection.CHECK, null));
+    }
+
+    /**
+     * Random operations on random ranges, the result must match the same operations
+     * applied position by position
+     */
+    @Test
+    public void matchesSingleUpdates() {
+        final Random random = new Random(3);
+        final BulkSelection selection = new BulkSelection();
+        final Ids ids = new Ids();
+        for (int round = 0; round < 300; round++) {
+            final int size = random.nextInt(200) + 1;
+            final boolean withIds = random.nextBoolean();
+            ids.firstKnown = withIds ? random.nextInt(size) / 4 : 0;
+            final BitSet checkStates = new BitSet();
+            final LongIntMap checkedIds = withIds ? new LongIntMap() : null;
+            final BitSet expected = new BitSet();
+            for (int step = 0; step < 10; step++) {
+                final int start = random.nextInt(size);
+                final int end = start + random.nextInt(size - start + 1);
+                final int operation = random.nextInt(4);
+                final int modulo = random.nextInt(5) + 1;
+                int checked = 0;
+                int unchecked = 0;
+                for (int position = start; position < end; position++) {
+                    final boolean oldValue = expected.get(position);
+                    if (!oldValue && !ids.isItemIdKnown(position))
+                        continue;
+                    final boolean value = operation == BulkSelection.CHECK || operation == BulkSelection.INVERT && !oldValue
+                            || operation == BulkSelection.PREDICATE && (oldValue || position % modulo == 0);
+                    expected.set(position, value);
+                    if (value && !oldValue)
+                        checked++;
+                    else if (!value && oldValue)
+                        unchecked++;
+                }
+                selection.apply(checkStates, checkedIds, ids, start, end, operation,
+                        new CheckableList.PositionPredicate() {
+                            @Override
+                            public boolean apply(int position) {
+                                return position % modulo == 0;
+                            }
+                        });
+                assertEquals(expected, checkStates);
+                assertEquals(checked, selection.getChecked());
+                assertEquals(unchecked, selection.getUnchecked());
+                if (checkedIds != null) {
+                    assertEquals(expected.cardinality(), checkedIds.size());
+                    for (int position = expected.nextSetBit(0); position >= 0; position = expected.nextSetBit(position + 1)) {
+                        assertEquals(position, checkedIds.get(position + 100, -1));
+                    }
+                }
+            }
+        }
+    }
+}
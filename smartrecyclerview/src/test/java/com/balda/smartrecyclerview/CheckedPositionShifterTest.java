@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CheckedPositionShifterTest {
+
+    @Test
+    public void shift() {
+        assertEquals(3, CheckedPositionShifter.shift(3, CheckedPositionShifter.INSERT, 4, 0, 2));
+        assertEquals(6, CheckedPositionShifter.shift(4, CheckedPositionShifter.INSERT, 4, 0, 2));
+        assertEquals(3, CheckedPositionShifter.shift(3, CheckedPositionShifter.REMOVE, 4, 0, 2));
+        assertEquals(RecyclerView.NO_POSITION, CheckedPositionShifter.shift(5, CheckedPositionShifter.REMOVE, 4, 0, 2));
+        assertEquals(4, CheckedPositionShifter.shift(6, CheckedPositionShifter.REMOVE, 4, 0, 2));
+        assertEquals(7, CheckedPositionShifter.shift(2, CheckedPositionShifter.MOVE, 2, 7, 1));
+        assertEquals(4, CheckedPositionShifter.shift(5, CheckedPositionShifter.MOVE, 2, 7, 1));
+        assertEquals(6, CheckedPositionShifter.shift(5, CheckedPositionShifter.MOVE, 7, 2, 1));
+        assertEquals(8, CheckedPositionShifter.shift(8, CheckedPositionShifter.MOVE, 7, 2, 1));
+    }
+
+    @Test
+    public void nothingToShift() {
+        final BitSet checkStates = new BitSet();
+        checkStates.set(1);
+        final CheckedPositionShifter shifter = new CheckedPositionShifter();
+        assertEquals(-1, shifter.shiftPositions(checkStates, CheckedPositionShifter.INSERT, 2, 0, 1));
+        assertTrue(checkStates.get(1));
+    }
+
+    /**
+     * Apply random changes to a list of items, the checked positions and ids must follow
+     * the checked items
+     */
+    @Test
+    public void followsTheItems() {
+        final Random random = new Random(1);
+        final CheckedPositionShifter shifter = new CheckedPositionShifter();
+        for (int round = 0; round < 200; round++) {
+            final List<Long> items = new ArrayList<>();
+            long nextId = 0;
+            for (int i = random.nextInt(50) + 1; i > 0; i--) {
+                items.add(nextId++);
+            }
+            final Set<Long> checked = new HashSet<>();
+            final BitSet checkStates = new BitSet();
+            final LongIntMap checkedIdStates = new LongIntMap();
+            for (int i = 0; i < items.size(); i++) {
+                if (random.nextInt(3) == 0) {
+                    checked.add(items.get(i));
+                    checkStates.set(i);
+                    checkedIdStates.put(items.get(i), i);
+                }
+            }
+            for (int step = 0; step < 20 && !items.isEmpty(); step++) {
+                final int type = random.nextInt(3);
+                final int start;
+                int target = 0;
+                int count = 1;
+                final Set<Long> removed = new HashSet<>();
+                if (type == CheckedPositionShifter.INSERT) {
+                    start = random.nextInt(items.size() + 1);
+                    count = random.nextInt(3) + 1;
+                    for (int i = 0; i < count; i++) {
+                        items.add(start, nextId++);
+                    }
+                } else if (type == CheckedPositionShifter.REMOVE) {
+                    start = random.nextInt(items.size());
+                    count = random.nextInt(Math.min(3, items.size() - start)) + 1;
+                    for (int i = 0; i < count; i++) {
+                        removed.add(items.remove(start));
+                    }
+                } else {
+                    start = random.nextInt(items.size());
+                    target = random.nextInt(items.size());
+                    items.add(target, items.remove(start));
+                }
+                final int removedCount = shifter.shiftPositions(checkStates, type, start, target, count);
+                shifter.shiftIds(checkedIdStates, type, start, target, count);
+
+                int expectedRemoved = 0;
+                for (Long id : removed) {
+                    if (checked.remove(id))
+                        expectedRemoved++;
+                }
+                if (removedCount >= 0)
+                    assertEquals(expectedRemoved, removedCount);
+                else
+                    assertEquals(0, expectedRemoved);
+                assertEquals(expectedRemoved, shifter.getRemovedIdCount());
+                for (int i = 0; i < shifter.getRemovedIdCount(); i++) {
+                    assertTrue(removed.contains(shifter.getRemovedId(i)));
+                }
+
+                assertEquals(checked.size(), checkStates.cardinality());
+                assertEquals(checked.size(), checkedIdStates.size());
+                for (int i = 0; i < items.size(); i++) {
+                    final long id = items.get(i);
+                    assertEquals(checked.contains(id), checkStates.get(i));
+                    if (checked.contains(id))
+                        assertEquals(i, checkedIdStates.get(id, -1));
+                    else
+                        assertFalse(checkedIdStates.get(id, -1) >= 0);
+                }
+                if (items.isEmpty())
+                    break;
+            }
+        }
+    }
+}
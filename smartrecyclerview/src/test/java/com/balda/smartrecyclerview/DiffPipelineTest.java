@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DiffPipelineTest {
+
+    /**
+     * Items are "key:content" strings, the payload of a change is the new content
+     */
+    private static final class Callback extends DiffUtil.Callback {
+        final List<String> oldList;
+        final List<String> newList;
+        int comparisons;
+
+        Callback(List<String> oldList, List<String> newList) {
+            this.oldList = oldList;
+            this.newList = newList;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldList.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newList.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            comparisons++;
+            return key(oldList.get(oldItemPosition)).equals(key(newList.get(newItemPosition)));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return oldList.get(oldItemPosition).equals(newList.get(newItemPosition));
+        }
+
+        @Override
+        public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+            final String item = newList.get(newItemPosition);
+            return item.substring(item.indexOf(':') + 1);
+        }
+    }
+
+    private static String key(String item) {
+        return item.substring(0, item.indexOf(':'));
+    }
+
+    private static List<String> items(String... items) {
+        return Arrays.asList(items);
+    }
+
+    private static RecordingCallback dispatch(Callback callback) {
+        final RecordingCallback recording = new RecordingCallback(callback.oldList);
+        DiffPipeline.calculate(callback, true).dispatchUpdatesTo(recording);
+        return recording;
+    }
+
+    @Test
+    public void changeInTheMiddle() {
+        final Callback callback = new Callback(items("a:1", "b:1", "c:1", "d:1", "e:1"),
+                items("a:1", "b:1", "c:2", "d:1", "e:1"));
+        final RecordingCallback recording = dispatch(callback);
+        assertEquals(Collections.singletonList("changed 2 1 2"), recording.events);
+        // The prefix covers the whole list, nothing is left to diff
+        assertEquals(5, callback.comparisons);
+    }
+
+    @Test
+    public void insertionInTheMiddle() {
+        final RecordingCallback recording = dispatch(new Callback(items("a:1", "b:1", "c:1", "d:1"),
+                items("a:1", "b:1", "x:1", "y:1", "c:1", "d:1")));
+        assertEquals(Collections.singletonList("inserted 2 2"), recording.events);
+    }
+
+    @Test
+    public void removalInTheMiddle() {
+        final RecordingCallback recording = dispatch(new Callback(items("a:1", "b:1", "c:1", "d:1", "e:1"),
+                items("a:1", "d:1", "e:1")));
+        assertEquals(Collections.singletonList("removed 1 2"), recording.events);
+    }
+
+    @Test
+    public void appendAndTruncate() {
+        assertEquals(Collections.singletonList("inserted 2 2"),
+                dispatch(new Callback(items("a:1", "b:1"), items("a:1", "b:1", "c:1", "d:1"))).events);
+        assertEquals(Collections.singletonList("removed 1 3"),
+                dispatch(new Callback(items("a:1", "b:1", "c:1", "d:1"), items("a:1"))).events);
+        assertEquals(Collections.singletonList("inserted 0 2"),
+                dispatch(new Callback(Collections.<String>emptyList(), items("a:1", "b:1"))).events);
+    }
+
+    @Test
+    public void changesAroundTheWindow() {
+        final Callback callback = new Callback(items("a:1", "b:1", "c:1", "d:1", "e:1"),
+                items("a:2", "b:1", "x:1", "d:1", "e:2"));
+        final RecordingCallback recording = dispatch(callback);
+        assertResult(callback, recording);
+        // Changes of the prefix and of the suffix are notified at their final positions
+        assertTrue(recording.events.contains("changed 0 1 2"));
+        assertTrue(recording.events.contains("changed 4 1 2"));
+    }
+
+    @Test
+    public void randomChanges() {
+        final Random random = new Random(1);
+        for (int round = 0; round < 500; round++) {
+            final List<String> oldList = new ArrayList<>();
+            for (int i = 0; i < random.nextInt(30); i++) {
+                oldList.add(i + ":0");
+            }
+            final List<String> newList = new ArrayList<>(oldList);
+            int next = oldList.size();
+            for (int i = random.nextInt(5); i > 0; i--) {
+                final int operation = random.nextInt(3);
+                if (operation == 0 || newList.isEmpty()) {
+                    newList.add(random.nextInt(newList.size() + 1), (next++) + ":0");
+                } else if (operation == 1) {
+                    newList.remove(random.nextInt(newList.size()));
+                } else {
+                    final int position = random.nextInt(newList.size());
+                    newList.set(position, key(newList.get(position)) + ":" + (round + 1));
+                }
+            }
+            final Callback callback = new Callback(oldList, newList);
+            assertResult(callback, dispatch(callback));
+        }
+    }
+
+    /**
+     * Check that the updates turn the old list into the new one: the items kept are in
+     * the right place and the ones with different contents are notified as changed
+     */
+    private static void assertResult(Callback callback, RecordingCallback recording) {
+        assertEquals(callback.newList.size(), recording.items.size());
+        for (int i = 0; i < recording.items.size(); i++) {
+            final String item = (String) recording.items.get(i);
+            if (item == null)
+                continue;
+            final String newItem = callback.newList.get(i);
+            assertEquals(key(newItem), key(item));
+            assertEquals(!item.equals(newItem), recording.changed.get(i));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FuzzyMatcherTest {
+
+    private final FuzzyMatcher<Object> matcher = new FuzzyMatcher<>();
+    private final Object item = new Object();
+
+    private int match(String text, String constraint) {
+        return matcher.match(item, text, constraint, null);
+    }
+
+    @Test
+    public void matchesSubsequence() {
+        assertNotEquals(Matcher.NO_MATCH, match("hello world", "hw"));
+        assertNotEquals(Matcher.NO_MATCH, match("hello world", "lowo"));
+        assertEquals(Matcher.NO_MATCH, match("hello world", "wh"));
+        assertEquals(Matcher.NO_MATCH, match("hello", "hellos"));
+    }
+
+    @Test
+    public void doesNotSkipPastValidMatch() {
+        // The word start "a" of annex has no "b" after it, the one in lab must be kept
+        assertNotEquals(Matcher.NO_MATCH, match("lab annex", "ab"));
+        assertNotEquals(Matcher.NO_MATCH, match("xab a", "ab"));
+    }
+
+    @Test
+    public void prefersWordStarts() {
+        assertTrue(match("green tea", "gt") > match("gateway", "gt"));
+        assertTrue(match("tea", "tea") > match("steam", "tea"));
+    }
+
+    @Test
+    public void reportsSpans() {
+        final MatchSpans spans = new MatchSpans();
+        matcher.match(item, "hello world", "hewo", spans);
+        assertArrayEquals(new int[]{0, 2, 6, 8}, spans.toArray());
+    }
+}
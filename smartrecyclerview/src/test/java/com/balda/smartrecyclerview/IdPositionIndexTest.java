@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import androidx.recyclerview.widget.RecyclerView;
+
+import static org.junit.Assert.assertEquals;
+
+public class IdPositionIndexTest {
+
+    @Test
+    public void shiftsWithoutReindexing() {
+        final IdPositionIndex index = new IdPositionIndex(10);
+        for (int i = 0; i < 10; i++) {
+            index.put(100 + i, i);
+        }
+        index.shiftInserted(0, 2);
+        index.put(200, 0);
+        index.put(201, 1);
+        index.remove(103);
+        index.shiftRemoved(5, 1);
+        assertEquals(0, index.get(200));
+        assertEquals(1, index.get(201));
+        assertEquals(2, index.get(100));
+        assertEquals(4, index.get(102));
+        assertEquals(5, index.get(104));
+        assertEquals(10, index.get(109));
+        assertEquals(RecyclerView.NO_POSITION, index.get(103));
+        index.clear();
+        assertEquals(RecyclerView.NO_POSITION, index.get(100));
+    }
+
+    /**
+     * Random insertions, removals and moves of a list of ids, the index must always
+     * return the position of each id
+     */
+    @Test
+    public void followsTheItems() {
+        final Random random = new Random(7);
+        for (int round = 0; round < 50; round++) {
+            final List<Long> items = new ArrayList<>();
+            long nextId = 1;
+            for (int i = random.nextInt(300); i > 0; i--) {
+                items.add(nextId++);
+            }
+            final IdPositionIndex index = new IdPositionIndex(items.size());
+            for (int i = 0; i < items.size(); i++) {
+                index.put(items.get(i), i);
+            }
+            for (int step = 0; step < 300; step++) {
+                final int operation = items.isEmpty() ? 0 : random.nextInt(3);
+                if (operation == 0) {
+                    final int position = random.nextInt(items.size() + 1);
+                    final int count = random.nextInt(3) + 1;
+                    index.shiftInserted(position, count);
+                    for (int i = 0; i < count; i++) {
+                        items.add(position + i, nextId);
+                        index.put(nextId++, position + i);
+                    }
+                } else if (operation == 1) {
+                    final int position = random.nextInt(items.size());
+                    final int count = random.nextInt(Math.min(3, items.size() - position)) + 1;
+                    for (int i = 0; i < count; i++) {
+                        index.remove(items.remove(position));
+                    }
+                    index.shiftRemoved(position, count);
+                } else {
+                    // A move re-puts the items between the two positions
+                    final int from = random.nextInt(items.size());
+                    final int to = random.nextInt(items.size());
+                    items.add(to, items.remove(from));
+                    for (int i = Math.min(from, to); i <= Math.max(from, to); i++) {
+                        index.put(items.get(i), i);
+                    }
+                }
+                for (int i = 0; i < items.size(); i++) {
+                    assertEquals(i, index.get(items.get(i)));
+                }
+            }
+        }
+    }
+}
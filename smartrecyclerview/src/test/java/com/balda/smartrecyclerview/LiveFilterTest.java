@@ -0,0 +1,211 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import android.view.ViewGroup;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Changes made while a filter is active must leave the adapter as if the changed items
+ * were filtered again from scratch, and notify updates leading to that state
+ */
+public class LiveFilterTest {
+
+    private static final String[] WORDS = {"alpha", "beta", "gamma", "delta", "bravo", "echo", "beach"};
+    /**
+     * The key of an item is the number at its end
+     */
+    private static final ItemKeyProvider<String> KEYS = new ItemKeyProvider<String>() {
+        @Override
+        public long getKey(@NonNull String item) {
+            return Long.parseLong(item.substring(item.lastIndexOf(' ') + 1));
+        }
+
+        @Override
+        public long getContentHash(@NonNull String item) {
+            return item.hashCode();
+        }
+    };
+
+    private static final class Adapter extends RecyclerArrayAdapter<String, BaseViewHolder> {
+        RecordingCallback updates;
+
+        Adapter(List<String> items) {
+            //noinspection ConstantConditions
+            super(null, items);
+        }
+
+        @Override
+        protected ListUpdateCallback getUpdateCallback() {
+            return updates;
+        }
+
+        @NonNull
+        @Override
+        protected BaseViewHolder createItemViewHolder(@NonNull ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Filter synchronously, the test has no main thread
+         */
+        @SuppressWarnings("unchecked")
+        void filterNow(String constraint) {
+            final ArrayFilter filter = (ArrayFilter) getFilter();
+            record();
+            filter.publishResults(constraint, filter.performFiltering(constraint));
+        }
+
+        List<String> shown() {
+            final List<String> shown = new ArrayList<>();
+            for (int i = 0; i < getItemCount(); i++) {
+                shown.add(getItem(i));
+            }
+            return shown;
+        }
+
+        void record() {
+            updates = new RecordingCallback(shown());
+        }
+    }
+
+    @Test
+    public void defaultMatcher() {
+        check(false);
+    }
+
+    @Test
+    public void fuzzyMatcher() {
+        check(true);
+    }
+
+    private static void check(boolean fuzzy) {
+        final Random random = new Random(1);
+        int next = 0;
+        for (int round = 0; round < 50; round++) {
+            final List<String> source = new ArrayList<>();
+            for (int i = random.nextInt(30); i > 0; i--) {
+                source.add(randomItem(random, next++));
+            }
+            final Adapter adapter = new Adapter(new ArrayList<>(source));
+            if (fuzzy)
+                adapter.setMatcher(new FuzzyMatcher<String>());
+            adapter.setItemKeyProvider(KEYS);
+            adapter.setIdIndexEnabled(true);
+            // Nothing is notified to the recycler view
+            adapter.beginBatch();
+            final String constraint = WORDS[random.nextInt(WORDS.length)].substring(0, 2);
+            adapter.filterNow(constraint);
+            assertShown(adapter, source, constraint, fuzzy);
+
+            for (int step = 0; step < 30; step++) {
+                adapter.record();
+                final List<String> shown = adapter.shown();
+                switch (random.nextInt(5)) {
+                    case 0: {
+                        final String item = randomItem(random, next++);
+                        source.add(item);
+                        adapter.add(item);
+                        break;
+                    }
+                    case 1: {
+                        final List<String> items = new ArrayList<>();
+                        for (int i = random.nextInt(5); i > 0; i--) {
+                            items.add(randomItem(random, next++));
+                        }
+                        source.addAll(items);
+                        adapter.add(items);
+                        break;
+                    }
+                    case 2: {
+                        final String item = randomItem(random, next++);
+                        final int index = random.nextInt(shown.size() + 1);
+                        // Inserted before the item shown at the index, or after the last one shown
+                        final int sourcePosition;
+                        if (index < shown.size())
+                            sourcePosition = source.indexOf(shown.get(index));
+                        else if (!shown.isEmpty())
+                            sourcePosition = source.indexOf(shown.get(shown.size() - 1)) + 1;
+                        else
+                            sourcePosition = source.size();
+                        source.add(sourcePosition, item);
+                        adapter.insert(item, index);
+                        break;
+                    }
+                    case 3: {
+                        if (source.isEmpty())
+                            continue;
+                        // Shown or not
+                        final String item = source.get(random.nextInt(source.size()));
+                        source.remove(item);
+                        adapter.remove(item);
+                        break;
+                    }
+                    default: {
+                        if (shown.isEmpty())
+                            continue;
+                        final int position = random.nextInt(shown.size());
+                        source.remove(shown.get(position));
+                        adapter.onItemDismiss(position);
+                        break;
+                    }
+                }
+                assertShown(adapter, source, constraint, fuzzy);
+            }
+        }
+    }
+
+    private static String randomItem(Random random, int id) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + id;
+    }
+
+    /**
+     * Compare the adapter with a new filtering of the source, and the updates with the changes
+     * of the shown items
+     */
+    private static void assertShown(Adapter adapter, List<String> source, String constraint, boolean fuzzy) {
+        final Adapter expected = new Adapter(new ArrayList<>(source));
+        if (fuzzy)
+            expected.setMatcher(new FuzzyMatcher<String>());
+        expected.filterNow(constraint);
+        final List<String> shown = adapter.shown();
+        assertEquals(expected.shown(), shown);
+        for (int i = 0; i < shown.size(); i++) {
+            assertArrayEquals(expected.getMatchSpans(i), adapter.getMatchSpans(i));
+            assertEquals(i, adapter.getPositionForId(KEYS.getKey(shown.get(i))));
+        }
+
+        final RecordingCallback updates = adapter.updates;
+        assertEquals(shown.size(), updates.items.size());
+        for (int i = 0; i < shown.size(); i++) {
+            if (updates.items.get(i) != null)
+                assertEquals(shown.get(i), updates.items.get(i));
+        }
+    }
+}
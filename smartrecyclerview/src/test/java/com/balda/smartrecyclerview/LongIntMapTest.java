@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongIntMapTest {
+
+    @Test
+    public void putGetRemove() {
+        final LongIntMap map = new LongIntMap();
+        map.put(5, 1);
+        map.put(-3, 2);
+        map.put(0, 3);
+        map.put(5, 4);
+        assertEquals(3, map.size());
+        assertEquals(4, map.get(5, -1));
+        assertEquals(2, map.get(-3, -1));
+        assertEquals(3, map.get(0, -1));
+        assertEquals(-1, map.get(7, -1));
+        assertTrue(map.remove(0));
+        assertFalse(map.remove(0));
+        assertEquals(-1, map.get(0, -1));
+        assertArrayEquals(new long[]{-3, 5}, map.keys());
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(5, -1));
+    }
+
+    @Test
+    public void matchesHashMap() {
+        final Random random = new Random(1);
+        final LongIntMap map = new LongIntMap();
+        final HashMap<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            // Few keys, so removals shift back colliding entries
+            final long key = random.nextInt(300) - 150;
+            if (random.nextInt(3) < 2) {
+                final int value = random.nextInt();
+                map.put(key, value);
+                expected.put(key, value);
+            } else {
+                assertEquals(expected.remove(key) != null, map.remove(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey(), -1));
+        }
+        assertEquals(expected.size(), map.keys().length);
+    }
+}
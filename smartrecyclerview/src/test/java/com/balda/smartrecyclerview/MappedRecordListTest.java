@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class MappedRecordListTest {
+
+    private static final RecordDecoder<String> ASCII = new RecordDecoder<String>() {
+        @NonNull
+        @Override
+        public String decode(@NonNull ByteBuffer buffer, int offset, int length) {
+            final StringBuilder builder = new StringBuilder(length);
+            for (int i = offset; i < offset + length; i++) {
+                builder.append((char) buffer.get(i));
+            }
+            return builder.toString();
+        }
+    };
+
+    private File data;
+    private File index;
+
+    @Before
+    public void setUp() throws IOException {
+        data = File.createTempFile("records", ".dat");
+        index = File.createTempFile("records", ".idx");
+        write(data, "headalphabetagammadelta".getBytes("US-ASCII"));
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        data.delete();
+        //noinspection ResultOfMethodCallIgnored
+        index.delete();
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeOffsets(File file, int... offsets) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void fixedSize() throws IOException {
+        final MappedRecordList<String> list = new MappedRecordList<>(data, 4, 5, ASCII);
+        // The last partial record is not part of the list
+        assertEquals(Arrays.asList("alpha", "betag", "ammad"), list);
+    }
+
+    @Test
+    public void indexed() throws IOException {
+        writeOffsets(index, 4, 9, 13, 18);
+        final MappedRecordList<String> list = new MappedRecordList<>(data, index, ASCII);
+        assertEquals(Arrays.asList("alpha", "beta", "gamma", "delta"), list);
+    }
+
+    @Test
+    public void decreasingOffset() throws IOException {
+        writeOffsets(index, 4, 13, 9);
+        assertInvalid();
+    }
+
+    @Test
+    public void offsetPastTheEnd() throws IOException {
+        writeOffsets(index, 4, 9, 24);
+        assertInvalid();
+    }
+
+    @Test
+    public void partialOffset() throws IOException {
+        write(index, new byte[]{0, 0, 0, 4, 0, 0});
+        assertInvalid();
+    }
+
+    private void assertInvalid() {
+        try {
+            new MappedRecordList<>(data, index, ASCII);
+            fail();
+        } catch (IOException e) {
+            // Rejected when opening instead of failing when the record is read
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import android.view.ViewGroup;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class PagedListTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Items are their positions, the ranges loaded are recorded
+     */
+    private static final class Loader implements PageLoader<String> {
+        final List<String> loads = new ArrayList<>();
+
+        @Override
+        public int count(@Nullable String constraint) {
+            return 100;
+        }
+
+        @NonNull
+        @Override
+        public List<String> load(@Nullable String constraint, int start, int count) {
+            loads.add(start + " " + count);
+            final List<String> items = new ArrayList<>();
+            for (int i = start; i < start + count; i++) {
+                items.add(String.valueOf(i));
+            }
+            return items;
+        }
+    }
+
+    private static final class Adapter extends RecyclerArrayAdapter<String, BaseViewHolder> {
+        Adapter() {
+            //noinspection ConstantConditions
+            super(null, new ArrayList<String>());
+        }
+
+        @Override
+        protected ListUpdateCallback getUpdateCallback() {
+            return new RecordingCallback();
+        }
+
+        @NonNull
+        @Override
+        protected BaseViewHolder createItemViewHolder(@NonNull ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static PagedList<String> newList(Loader loader) {
+        final PagedList<String> list = new PagedList<>(loader, loader.count(null), 10, 3);
+        list.setExecutor(DIRECT);
+        return list;
+    }
+
+    @Test
+    public void placeholderUntilLoaded() {
+        final Loader loader = new Loader();
+        final PagedList<String> list = newList(loader);
+        assertEquals(100, list.size());
+        assertFalse(list.isLoaded(45));
+        assertNull(list.get(45));
+        // The item is in the middle of its page, nothing is prefetched
+        assertEquals(Collections.singletonList("40 10"), loader.loads);
+        assertNull(list.get(18));
+        // The item is in the last quarter of its page, the following one is prefetched first
+        assertEquals(Arrays.asList("40 10", "20 10", "10 10"), loader.loads);
+    }
+
+    @Test
+    public void itemsCantBeReplaced() {
+        final PagedList<String> list = newList(new Loader());
+        try {
+            list.set(0, "changed");
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // A change would be lost when the page is evicted
+        }
+    }
+
+    @Test
+    public void adapterRejectsChanges() {
+        final Adapter adapter = new Adapter();
+        // Not committed, the data set change is not notified to a recycler view
+        adapter.beginBatch();
+        adapter.setPagedList(newList(new Loader()));
+        try {
+            adapter.onItemMove(0, 1);
+            fail("Moved");
+        } catch (UnsupportedOperationException e) {
+            // Dragging a paged list is not supported
+        }
+        try {
+            adapter.onItemDismiss(0);
+            fail("Dismissed");
+        } catch (UnsupportedOperationException e) {
+            // Swiping a paged list is not supported
+        }
+        try {
+            adapter.add("item");
+            fail("Added");
+        } catch (UnsupportedOperationException e) {
+            // The size of a paged list is fixed
+        }
+        assertEquals(100, adapter.getItemCount());
+    }
+}
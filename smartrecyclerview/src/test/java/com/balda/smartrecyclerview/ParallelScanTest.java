@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class ParallelScanTest {
+
+    private static final Executor THREADS = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            new Thread(command).start();
+        }
+    };
+
+    private static final ParallelScan.Predicate EVEN = new ParallelScan.Predicate() {
+        @Override
+        public boolean matches(int index) {
+            return index % 2 == 0;
+        }
+    };
+
+    @Test
+    public void scanMergesTheChunksInOrder() {
+        final int[] expected = new int[5000];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i * 2;
+        }
+        assertArrayEquals(expected, new ParallelScan(THREADS, 100, 4).scan(10000, EVEN, null));
+        assertArrayEquals(expected, new ParallelScan(THREADS, Integer.MAX_VALUE, 4).scan(10000, EVEN, null));
+    }
+
+    @Test
+    public void cancelled() {
+        assertNull(new ParallelScan(THREADS, 100, 4).scan(10000, EVEN, new ParallelScan.Cancellation() {
+            @Override
+            public boolean isCancelled() {
+                return true;
+            }
+        }));
+    }
+
+    @Test
+    public void exceptionOfAChunk() {
+        try {
+            new ParallelScan(THREADS, 100, 4).forEach(10000, new Failing(new IllegalStateException("chunk")));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("chunk", e.getMessage());
+        }
+    }
+
+    @Test
+    public void errorOfAChunk() {
+        try {
+            new ParallelScan(THREADS, 100, 4).forEach(10000, new Failing(new StackOverflowError("chunk")));
+            fail();
+        } catch (StackOverflowError e) {
+            assertEquals("chunk", e.getMessage());
+        }
+    }
+
+    /**
+     * Fails in the last chunk only, which never runs on the calling thread
+     */
+    private static final class Failing extends ParallelScan.Task {
+        private final Throwable failure;
+
+        Failing(Throwable failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        boolean process(int chunk, int from, int to) {
+            if (to == 10000) {
+                if (failure instanceof Error)
+                    throw (Error) failure;
+                throw (RuntimeException) failure;
+            }
+            return true;
+        }
+    }
+}
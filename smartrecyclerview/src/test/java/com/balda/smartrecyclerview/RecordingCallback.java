@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Records the updates it receives and applies them to a copy of the old list, if given, to check
+ * that they turn it into the new one. Inserted items are null until filled by the test.
+ */
+class RecordingCallback implements ListUpdateCallback {
+
+    final List<String> events = new ArrayList<>();
+    final List<Object> items;
+    /**
+     * Parallel to {@link #items}, true for the items notified as changed
+     */
+    final List<Boolean> changed = new ArrayList<>();
+
+    /**
+     * Only record the updates
+     */
+    RecordingCallback() {
+        items = null;
+    }
+
+    RecordingCallback(List<?> oldItems) {
+        items = new ArrayList<Object>(oldItems);
+        for (int i = 0; i < items.size(); i++) {
+            changed.add(false);
+        }
+    }
+
+    @Override
+    public void onInserted(int position, int count) {
+        events.add("inserted " + position + " " + count);
+        if (items == null)
+            return;
+        for (int i = 0; i < count; i++) {
+            items.add(position, null);
+            changed.add(position, false);
+        }
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        events.add("removed " + position + " " + count);
+        if (items == null)
+            return;
+        for (int i = 0; i < count; i++) {
+            items.remove(position);
+            changed.remove(position);
+        }
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        events.add("moved " + fromPosition + " " + toPosition);
+        if (items == null)
+            return;
+        items.add(toPosition, items.remove(fromPosition));
+        changed.add(toPosition, changed.remove(fromPosition));
+    }
+
+    @Override
+    public void onChanged(int position, int count, Object payload) {
+        events.add("changed " + position + " " + count + " " + payload);
+        if (items == null)
+            return;
+        for (int i = position; i < position + count; i++) {
+            changed.set(i, true);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SearchIndexTest {
+
+    private static final String[] WORDS = {"apple", "app", "pear", "pie", "red", "green", "blue", "sky"};
+    private static final String[] QUERIES = {"a", "ap", "apple", "p", "pe", "pie", "b", "s", "g", "z", "red a"};
+
+    private static String randomText(Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+    }
+
+    /**
+     * Check that the index answers like one built from scratch over the same texts
+     */
+    private static void assertSameResults(List<String> texts, SearchIndex index) {
+        final SearchIndex expected = new SearchIndex(texts);
+        for (String query : QUERIES) {
+            assertArrayEquals(query, expected.query(query, null, null), index.query(query, null, null));
+        }
+        for (int i = 0; i < texts.size(); i++) {
+            assertEquals(texts.get(i), index.getText(i));
+        }
+    }
+
+    @Test
+    public void queryFindsWordPrefixes() {
+        final SearchIndex index = new SearchIndex(Arrays.asList("red apple", "green pear", "apple pie"));
+        assertArrayEquals(new int[]{0, 2}, index.query("ap", null, null));
+        // Extends the cached query
+        assertArrayEquals(new int[]{0, 2}, index.query("apple", null, null));
+        assertArrayEquals(new int[]{1, 2}, index.query("p", null, null));
+        assertArrayEquals(new int[]{0}, index.query("red a", null, null));
+        assertArrayEquals(new int[0], index.query("x", null, null));
+    }
+
+    @Test
+    public void matches() {
+        assertTrue(SearchIndex.matches("red apple", "ap"));
+        assertTrue(SearchIndex.matches("red apple", "red"));
+        assertFalse(SearchIndex.matches("red apple", "pp"));
+    }
+
+    @Test
+    public void insertAndRemove() {
+        final Random random = new Random(1);
+        final List<String> texts = new ArrayList<>();
+        final SearchIndex index = new SearchIndex(texts);
+        for (int i = 0; i < 300; i++) {
+            if (texts.isEmpty() || random.nextInt(3) < 2) {
+                final int position = random.nextInt(texts.size() + 1);
+                final String text = randomText(random);
+                texts.add(position, text);
+                index.insert(position, text);
+            } else {
+                final int position = random.nextInt(texts.size());
+                texts.remove(position);
+                index.remove(position);
+            }
+            // Query before the next change, so a stale cache would be noticed
+            assertSameResults(texts, index);
+        }
+    }
+
+    @Test
+    public void addAll() {
+        final Random random = new Random(2);
+        final List<String> texts = new ArrayList<>();
+        final SearchIndex index = new SearchIndex(texts);
+        for (int i = 0; i < 50; i++) {
+            final List<String> added = new ArrayList<>();
+            for (int j = random.nextInt(5); j > 0; j--) {
+                added.add(randomText(random));
+            }
+            texts.addAll(added);
+            index.addAll(added);
+            assertSameResults(texts, index);
+        }
+    }
+
+    @Test
+    public void permuteAndMove() {
+        final Random random = new Random(3);
+        final List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            texts.add(randomText(random));
+        }
+        final SearchIndex index = new SearchIndex(texts);
+        for (int round = 0; round < 50; round++) {
+            final int from = random.nextInt(texts.size());
+            final int to = random.nextInt(texts.size());
+            texts.add(to, texts.remove(from));
+            index.move(from, to);
+            assertSameResults(texts, index);
+
+            final int[] newPositions = new int[texts.size()];
+            final List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < newPositions.length; i++) {
+                order.add(i);
+            }
+            Collections.shuffle(order, random);
+            final String[] permuted = new String[texts.size()];
+            for (int i = 0; i < newPositions.length; i++) {
+                newPositions[i] = order.get(i);
+                permuted[newPositions[i]] = texts.get(i);
+            }
+            texts.clear();
+            texts.addAll(Arrays.asList(permuted));
+            index.permute(newPositions);
+            assertSameResults(texts, index);
+        }
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        final SearchIndex index = new SearchIndex(Arrays.asList("red apple", "green pear"));
+        final SearchIndex copy = index.copy();
+        copy.remove(0);
+        assertArrayEquals(new int[]{0}, index.query("ap", null, null));
+        assertArrayEquals(new int[0], copy.query("ap", null, null));
+    }
+
+    /**
+     * A copy shares the sorted tokens, merging its changes must leave the original as it is
+     */
+    @Test
+    public void copyMergesApart() {
+        final Random random = new Random(4);
+        final List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            texts.add(randomText(random));
+        }
+        SearchIndex index = new SearchIndex(texts);
+        List<String> indexTexts = new ArrayList<>(texts);
+        for (int round = 0; round < 20; round++) {
+            final SearchIndex copy = index.copy();
+            final List<String> copyTexts = new ArrayList<>(indexTexts);
+            for (int i = 0; i < 40; i++) {
+                if (copyTexts.isEmpty() || random.nextBoolean()) {
+                    final int position = random.nextInt(copyTexts.size() + 1);
+                    final String text = randomText(random);
+                    copyTexts.add(position, text);
+                    copy.insert(position, text);
+                } else {
+                    final int position = random.nextInt(copyTexts.size());
+                    copyTexts.remove(position);
+                    copy.remove(position);
+                }
+            }
+            assertSameResults(indexTexts, index);
+            assertSameResults(copyTexts, copy);
+            index = copy;
+            indexTexts = copyTexts;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SelectionCodecTest {
+
+    @Test
+    public void roundTrip() {
+        final Random random = new Random(1);
+        for (int round = 0; round < 100; round++) {
+            final BitSet positions = new BitSet();
+            for (int i = 0; i < 500; i++) {
+                final int start = random.nextInt(100000);
+                positions.set(start, start + random.nextInt(50));
+            }
+            final LongIntMap ids = new LongIntMap();
+            for (int i = 0; i < 200; i++) {
+                ids.put(random.nextLong(), random.nextInt(100000));
+            }
+            ids.put(0, 1);
+            final SelectionCodec.Selection selection = SelectionCodec.decode(SelectionCodec.encode(positions, ids));
+            assertEquals(positions, selection.positions);
+            assertEquals(ids.size(), selection.ids.size());
+            for (long key : ids.keys()) {
+                assertEquals(ids.get(key, -1), selection.ids.get(key, -1));
+            }
+        }
+    }
+
+    @Test
+    public void roundTripWithoutIds() {
+        final BitSet positions = new BitSet();
+        positions.set(0, 1000000);
+        final byte[] data = SelectionCodec.encode(positions, null);
+        // A run takes a few bytes whatever its length
+        assertTrue(data.length < 16);
+        final SelectionCodec.Selection selection = SelectionCodec.decode(data);
+        assertEquals(positions, selection.positions);
+        assertNull(selection.ids);
+    }
+
+    @Test
+    public void truncated() {
+        final BitSet positions = new BitSet();
+        positions.set(3, 10);
+        positions.set(500);
+        final LongIntMap ids = new LongIntMap();
+        ids.put(42, 3);
+        ids.put(-7, 500);
+        final byte[] data = SelectionCodec.encode(positions, ids);
+        for (int length = 0; length < data.length; length++) {
+            try {
+                SelectionCodec.decode(Arrays.copyOf(data, length));
+                fail("Decoded " + length + " of " + data.length + " bytes");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void corruptRuns() {
+        // Version, one run, gap, length, no ids: a negative gap or length, or a run ending
+        // past the largest position, must be rejected
+        final long[][] runs = {{-5, 3}, {2, -1}, {Integer.MAX_VALUE, 1}, {Integer.MAX_VALUE - 1, 2}};
+        for (long[] run : runs) {
+            final byte[] data = concat(varint(1), varint(1), varint(run[0]), varint(run[1]), varint(0));
+            try {
+                SelectionCodec.decode(data);
+                fail("Decoded run " + Arrays.toString(run));
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        // Two runs whose total overflows
+        final byte[] data = concat(varint(1), varint(2), varint(Integer.MAX_VALUE - 10), varint(5),
+                varint(10), varint(5), varint(0));
+        try {
+            SelectionCodec.decode(data);
+            fail("Decoded overflowing runs");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Encode an int as the codec does, negative values take five bytes
+     */
+    private static byte[] varint(long value) {
+        value &= 0xffffffffL;
+        final byte[] buffer = new byte[5];
+        int size = 0;
+        while ((value & ~0x7fL) != 0) {
+            buffer[size++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[size++] = (byte) value;
+        return Arrays.copyOf(buffer, size);
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int size = 0;
+        for (byte[] part : parts) {
+            size += part.length;
+        }
+        final byte[] result = new byte[size];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
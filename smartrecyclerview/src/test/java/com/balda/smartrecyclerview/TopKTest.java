@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class TopKTest {
+
+    @Test
+    public void selectsBestByScoreThenPosition() {
+        final int[] scores = {1, 5, 3, 5, 0, 3};
+        assertArrayEquals(new int[]{1, 3, 2}, TopK.select(new int[]{0, 1, 2, 3, 4, 5}, scores, 3));
+        assertArrayEquals(new int[]{3, 5, 0}, TopK.select(new int[]{0, 3, 5}, scores, 10));
+        assertArrayEquals(new int[0], TopK.select(new int[]{0, 1}, scores, 0));
+    }
+
+    @Test
+    public void matchesSort() {
+        final Random random = new Random(1);
+        for (int round = 0; round < 500; round++) {
+            final int[] scores = new int[100];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = random.nextInt(5);
+            }
+            final TreeSet<Integer> positions = new TreeSet<>();
+            for (int i = random.nextInt(50); i > 0; i--) {
+                positions.add(random.nextInt(scores.length));
+            }
+            final Integer[] sorted = positions.toArray(new Integer[0]);
+            Arrays.sort(sorted, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer o1, Integer o2) {
+                    return scores[o1] != scores[o2] ? scores[o2] - scores[o1] : o1 - o2;
+                }
+            });
+            final int[] candidates = new int[sorted.length];
+            int n = 0;
+            for (int position : positions) {
+                candidates[n++] = position;
+            }
+            final int k = random.nextInt(10);
+            final int[] expected = new int[Math.min(k, sorted.length)];
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = sorted[i];
+            }
+            assertArrayEquals(expected, TopK.select(candidates, scores, k));
+        }
+    }
+}
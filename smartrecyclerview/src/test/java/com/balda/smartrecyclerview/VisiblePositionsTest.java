@@ -0,0 +1,253 @@
+/*
+ * Copyright 2019 Marco Stornelli
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is furnished
+ * to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR
+ * A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF
+ * OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package com.balda.smartrecyclerview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class VisiblePositionsTest {
+
+    private static RecordingCallback dispatch(int[] oldPositions, int[][] oldSpans, int[] newPositions,
+                                              int[][] newSpans, int sourceSize) {
+        final RecordingCallback callback = new RecordingCallback(toList(oldPositions, sourceSize));
+        VisiblePositions.diff(oldPositions, oldSpans, newPositions, newSpans, sourceSize)
+                .dispatchTo(callback);
+        return callback;
+    }
+
+    private static List<Integer> toList(int[] positions, int sourceSize) {
+        final List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < (positions != null ? positions.length : sourceSize); i++) {
+            list.add(positions != null ? positions[i] : i);
+        }
+        return list;
+    }
+
+    @Test
+    public void narrowing() {
+        final RecordingCallback callback = dispatch(null, null, new int[]{0, 3, 4, 8}, null, 10);
+        assertEquals(Arrays.asList("removed 1 2", "removed 3 3", "removed 4 1"), callback.events);
+    }
+
+    @Test
+    public void widening() {
+        final RecordingCallback callback = dispatch(new int[]{2, 5}, null, null, null, 7);
+        assertEquals(Arrays.asList("inserted 0 2", "inserted 3 2", "inserted 6 1"), callback.events);
+    }
+
+    @Test
+    public void sameResults() {
+        assertEquals(Collections.emptyList(), dispatch(new int[]{1, 4}, null, new int[]{1, 4}, null, 5).events);
+    }
+
+    @Test
+    public void changedSpans() {
+        final int[][] oldSpans = {{0, 1}, {2, 3}, {0, 2}};
+        final int[][] newSpans = {{0, 1}, {2, 4}, {1, 2}};
+        final RecordingCallback callback = dispatch(new int[]{1, 4, 6}, oldSpans, new int[]{1, 4, 6}, newSpans, 7);
+        assertEquals(Collections.singletonList("changed 1 2 " + BaseViewHolder.PAYLOAD_MATCH_SPANS), callback.events);
+    }
+
+    @Test
+    public void randomResults() {
+        final Random random = new Random(1);
+        for (int round = 0; round < 500; round++) {
+            final int sourceSize = random.nextInt(40);
+            final int[] oldPositions = random.nextInt(5) == 0 ? null : randomPositions(random, sourceSize);
+            final int[] newPositions = random.nextInt(5) == 0 ? null : randomPositions(random, sourceSize);
+            final int[][] oldSpans = randomSpans(random, oldPositions, sourceSize);
+            final int[][] newSpans = randomSpans(random, newPositions, sourceSize);
+            final RecordingCallback callback = dispatch(oldPositions, oldSpans, newPositions, newSpans, sourceSize);
+
+            final List<Integer> expected = toList(newPositions, sourceSize);
+            final List<Integer> old = toList(oldPositions, sourceSize);
+            assertEquals(expected.size(), callback.items.size());
+            for (int i = 0; i < expected.size(); i++) {
+                final Integer position = (Integer) callback.items.get(i);
+                if (position == null) {
+                    // Inserted, it wasn't shown
+                    assertEquals(-1, old.indexOf(expected.get(i)));
+                    continue;
+                }
+                assertEquals(expected.get(i), position);
+                final int[] oldSpan = oldSpans != null ? oldSpans[old.indexOf(position)] : null;
+                final int[] newSpan = newSpans != null ? newSpans[i] : null;
+                assertEquals(!Arrays.equals(oldSpan, newSpan), callback.changed.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void randomEditsSorted() {
+        randomEdits(false);
+    }
+
+    @Test
+    public void randomEditsRanked() {
+        randomEdits(true);
+    }
+
+    /**
+     * Insert, remove and move unfiltered items, checking the shown positions against a list
+     */
+    private static void randomEdits(boolean ranked) {
+        final Random random = new Random(ranked ? 2 : 3);
+        final int sourceSize = 3000;
+        final int[] initial = randomPositions(random, sourceSize);
+        final int[][] initialSpans = new int[initial.length][];
+        final List<Integer> positions = new ArrayList<>();
+        final List<int[]> spans = new ArrayList<>();
+        for (int i = 0; i < initial.length; i++) {
+            initialSpans[i] = new int[]{i};
+            positions.add(initial[i]);
+            spans.add(initialSpans[i]);
+        }
+        final VisiblePositions visible = new VisiblePositions(initial, initialSpans, ranked);
+        int size = sourceSize;
+        for (int round = 0; round < 4000; round++) {
+            final int operation = random.nextInt(3);
+            if (operation == 0 || positions.isEmpty()) {
+                // An unfiltered item is inserted, shown if it matches
+                final int source = random.nextInt(size + 1);
+                shift(positions, source, 1);
+                visible.shiftSource(source, 1);
+                size++;
+                if (random.nextBoolean()) {
+                    final int index = ranked ? random.nextInt(positions.size() + 1) : visible.sortedIndex(source);
+                    final int[] span = {-round};
+                    positions.add(index, source);
+                    spans.add(index, span);
+                    visible.insert(index, source, span);
+                }
+            } else if (operation == 1) {
+                // A shown item is removed
+                final int index = random.nextInt(positions.size());
+                final int source = positions.remove(index);
+                spans.remove(index);
+                assertEquals(source, visible.get(index));
+                visible.remove(index);
+                shift(positions, source + 1, -1);
+                visible.shiftSource(source + 1, -1);
+                size--;
+            } else {
+                // A shown item is moved over another one
+                final int fromIndex = random.nextInt(positions.size());
+                final int toIndex = random.nextInt(positions.size());
+                final int from = positions.get(fromIndex);
+                final int to = positions.get(toIndex);
+                for (int i = 0; i < positions.size(); i++) {
+                    final int position = positions.get(i);
+                    if (position == from)
+                        positions.set(i, to);
+                    else if (from < to && position > from && position <= to)
+                        positions.set(i, position - 1);
+                    else if (from > to && position >= to && position < from)
+                        positions.set(i, position + 1);
+                }
+                positions.add(toIndex, positions.remove(fromIndex));
+                spans.add(toIndex, spans.remove(fromIndex));
+                visible.move(fromIndex, toIndex, to);
+            }
+            if (round % 50 == 0)
+                assertShown(positions, spans, visible);
+        }
+        assertShown(positions, spans, visible);
+    }
+
+    private static void shift(List<Integer> positions, int from, int delta) {
+        for (int i = 0; i < positions.size(); i++) {
+            if (positions.get(i) >= from)
+                positions.set(i, positions.get(i) + delta);
+        }
+    }
+
+    private static void assertShown(List<Integer> positions, List<int[]> spans, VisiblePositions visible) {
+        assertEquals(positions.size(), visible.size());
+        final int[] array = visible.toArray();
+        final int[][] spanArray = visible.spansToArray();
+        for (int i = 0; i < positions.size(); i++) {
+            assertEquals((int) positions.get(i), visible.get(i));
+            assertEquals((int) positions.get(i), array[i]);
+            assertSame(spans.get(i), visible.getSpans(i));
+            assertSame(spans.get(i), spanArray[i]);
+        }
+    }
+
+    @Test
+    public void arraysAreNotModified() {
+        final int[] positions = {1, 3, 5};
+        final VisiblePositions visible = new VisiblePositions(positions, null, false);
+        assertSame(positions, visible.toArray());
+        visible.shiftSource(2, 1);
+        visible.insert(0, 0, null);
+        final int[] shown = visible.toArray();
+        assertArrayEquals(new int[]{1, 3, 5}, positions);
+        assertArrayEquals(new int[]{0, 1, 4, 6}, shown);
+        visible.remove(0);
+        assertArrayEquals(new int[]{0, 1, 4, 6}, shown);
+        assertArrayEquals(new int[]{1, 4, 6}, visible.toArray());
+    }
+
+    @Test
+    public void mergeRanked() {
+        // The score is the position modulo 10
+        final VisiblePositions.Scorer scorer = new VisiblePositions.Scorer() {
+            @Override
+            public int score(int sourcePosition) {
+                return sourcePosition % 10;
+            }
+        };
+        final VisiblePositions visible = new VisiblePositions(new int[]{9, 18, 7, 5}, null, true);
+        final int[] added = {26, 33, 37, 41};
+        final int[] scores = {6, 3, 7, 1};
+        final RecordingCallback callback = new RecordingCallback(toList(visible.toArray(), 0));
+        assertEquals(3, visible.mergeRanked(added, scores, null, added.length, 6, scorer, callback));
+        assertArrayEquals(new int[]{9, 18, 7, 37, 26, 5}, visible.toArray());
+        assertEquals(Arrays.asList("inserted 3 1", "inserted 4 1"), callback.events);
+        assertEquals(-1, visible.mergeRanked(new int[]{42}, new int[]{2}, null, 1, 6, scorer, callback));
+    }
+
+    private static int[] randomPositions(Random random, int sourceSize) {
+        final int[] positions = new int[sourceSize];
+        int count = 0;
+        for (int i = 0; i < sourceSize; i++) {
+            if (random.nextBoolean())
+                positions[count++] = i;
+        }
+        return Arrays.copyOf(positions, count);
+    }
+
+    private static int[][] randomSpans(Random random, int[] positions, int sourceSize) {
+        if (random.nextBoolean())
+            return null;
+        final int[][] spans = new int[positions != null ? positions.length : sourceSize][];
+        for (int i = 0; i < spans.length; i++) {
+            spans[i] = new int[]{0, random.nextInt(2) + 1};
+        }
+        return spans;
+    }
+}